@@ -0,0 +1,100 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import javax.swing.JComponent;
+
+/**
+ * Utility functions for setting up viewers without a screen.
+ * @author Kazó Csaba
+ */
+class BenchmarkSupport {
+	/** The size of the viewer component, a typical maximized window. */
+	public static final int VIEW_WIDTH=1600, VIEW_HEIGHT=1000;
+
+	private BenchmarkSupport() {}
+
+	/**
+	 * Returns the {@code BufferedImage} type constant with the specified name, without the {@code TYPE_} prefix.
+	 */
+	public static int imageType(String name) {
+		try {
+			return BufferedImage.class.getField("TYPE_"+name).getInt(null);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException("Unknown image type: "+name);
+		} catch (IllegalAccessException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Creates an image with smooth gradients and some fine detail, so that rescaling has real work to do.
+	 */
+	public static BufferedImage createImage(int width, int height, int type) {
+		BufferedImage image=new BufferedImage(width, height, type);
+		WritableRaster raster=image.getRaster();
+		int bands=raster.getNumBands();
+		int[] maxValues=new int[bands];
+		for (int b=0; b<bands; b++)
+			maxValues[b]=(1<<raster.getSampleModel().getSampleSize(b))-1;
+		int[] row=new int[width*bands];
+		for (int y=0; y<height; y++) {
+			for (int x=0; x<width; x++)
+				for (int b=0; b<bands; b++) {
+					double value=.5+.25*Math.sin((x+b*37)*.01)+.25*Math.cos(y*.013)*((x^y)&1);
+					row[x*bands+b]=(int)(value*maxValues[b]);
+				}
+			raster.setPixels(0, y, width, 1, row);
+		}
+		return image;
+	}
+
+	/**
+	 * Creates a viewer showing the image, and lays it out at the size of {@link #VIEW_WIDTH} and
+	 * {@link #VIEW_HEIGHT}.
+	 * @param zoom the zoom factor, used if the resize strategy is {@code CUSTOM_ZOOM}
+	 */
+	public static ImageViewer createViewer(BufferedImage image, ResizeStrategy resizeStrategy, double zoom) {
+		ImageViewer viewer=new ImageViewer(image, false);
+		viewer.setResizeStrategy(resizeStrategy);
+		viewer.setZoomFactor(zoom);
+		JComponent component=viewer.getComponent();
+		component.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+		layout(component);
+		return viewer;
+	}
+
+	/**
+	 * Lays out a component hierarchy. Container.validate does nothing for components that are not displayable, so the
+	 * layout managers are invoked directly.
+	 */
+	private static void layout(Component c) {
+		if (c instanceof Container) {
+			Container container=(Container)c;
+			container.doLayout();
+			for (Component child: container.getComponents())
+				layout(child);
+		}
+	}
+
+	/**
+	 * Returns the image component of a viewer.
+	 */
+	public static ImageComponent getImageComponent(ImageViewer viewer) {
+		ImageComponent result=find(viewer.getComponent());
+		if (result==null) throw new AssertionError("No image component in the viewer");
+		return result;
+	}
+
+	private static ImageComponent find(Component c) {
+		if (c instanceof ImageComponent) return (ImageComponent)c;
+		if (c instanceof Container)
+			for (Component child: ((Container)c).getComponents()) {
+				ImageComponent result=find(child);
+				if (result!=null) return result;
+			}
+		return null;
+	}
+}
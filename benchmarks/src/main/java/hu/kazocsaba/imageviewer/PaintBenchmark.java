@@ -0,0 +1,77 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures painting the image component into an offscreen image.
+ * <p>
+ * The {@code paint} benchmark repaints an unchanged viewer, which is what happens while overlays are edited or other
+ * windows move over the viewer; this exercises the cached rescaled image and the tile cache. The
+ * {@code paintAfterImageChange} benchmark refreshes the image before each paint, so all caches are rebuilt, including
+ * the rescaled image created in {@code PaintManager.ensureCachedValid}.
+ * @author Kazó Csaba
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend={"-Djava.awt.headless=true", "-Xmx2g"})
+public class PaintBenchmark {
+	@Param({"1024", "6000"})
+	public int imageSize;
+	
+	@Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY", "USHORT_GRAY"})
+	public String imageType;
+	
+	@Param({"0.1", "0.5", "1", "3.7"})
+	public double zoom;
+	
+	private BufferedImage image;
+	private ImageViewer viewer;
+	private ImageComponent component;
+	private Graphics2D g;
+	
+	@Setup
+	public void setup() {
+		image=BenchmarkSupport.createImage(imageSize, imageSize, BenchmarkSupport.imageType(imageType));
+		viewer=BenchmarkSupport.createViewer(image, ResizeStrategy.CUSTOM_ZOOM, zoom);
+		component=BenchmarkSupport.getImageComponent(viewer);
+		BufferedImage screen=new BufferedImage(BenchmarkSupport.VIEW_WIDTH, BenchmarkSupport.VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		g=screen.createGraphics();
+		// paint the part visible in the viewport when it is scrolled to the top left corner
+		g.clip(new Rectangle(0, 0, BenchmarkSupport.VIEW_WIDTH, BenchmarkSupport.VIEW_HEIGHT));
+		component.paintComponent(g);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		g.dispose();
+	}
+	
+	@Benchmark
+	public void paint() {
+		component.paintComponent(g);
+	}
+	
+	@Benchmark
+	public void paintAfterImageChange() {
+		viewer.setImage(image);
+		component.paintComponent(g);
+	}
+}
@@ -0,0 +1,72 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a large image shrunk to fit the viewer, comparing the {@code RenderingHints} interpolation with
+ * the resampling filters. The image is refreshed before each paint, so the shrunk image is recomputed every time.
+ * <p>
+ * The resampling filters use as many threads as there are processors; to measure how they scale, run the benchmark
+ * with different {@code -XX:ActiveProcessorCount} values passed through {@code -jvmArgsAppend}.
+ * @author Kazó Csaba
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Djava.awt.headless=true", "-Xmx2g"})
+public class ShrinkBenchmark {
+	@Param({"6000"})
+	public int imageSize;
+	
+	@Param({"INT_RGB", "USHORT_GRAY"})
+	public String imageType;
+	
+	@Param({"HINT_BICUBIC", "AREA_AVERAGE", "BICUBIC", "LANCZOS"})
+	public String interpolation;
+	
+	private BufferedImage image;
+	private ImageViewer viewer;
+	private ImageComponent component;
+	private Graphics2D g;
+	
+	@Setup
+	public void setup() {
+		image=BenchmarkSupport.createImage(imageSize, imageSize, BenchmarkSupport.imageType(imageType));
+		viewer=BenchmarkSupport.createViewer(image, ResizeStrategy.SHRINK_TO_FIT, 1);
+		viewer.setInterpolationType(interpolation.equals("HINT_BICUBIC") ?
+				RenderingHints.VALUE_INTERPOLATION_BICUBIC : ResamplingFilter.valueOf(interpolation));
+		component=BenchmarkSupport.getImageComponent(viewer);
+		BufferedImage screen=new BufferedImage(BenchmarkSupport.VIEW_WIDTH, BenchmarkSupport.VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		g=screen.createGraphics();
+		g.clip(new Rectangle(0, 0, BenchmarkSupport.VIEW_WIDTH, BenchmarkSupport.VIEW_HEIGHT));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		g.dispose();
+	}
+	
+	@Benchmark
+	public void shrinkAfterImageChange() {
+		viewer.setImage(image);
+		component.paintComponent(g);
+	}
+}
@@ -0,0 +1,63 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Point;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the coordinate conversions that run for every mouse event and every overlay paint.
+ * @author Kazó Csaba
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Djava.awt.headless=true")
+public class TransformBenchmark {
+	@Param({"CUSTOM_ZOOM", "RESIZE_TO_FIT"})
+	public ResizeStrategy resizeStrategy;
+	
+	private static final int POINT_COUNT=1024;
+	
+	private ImageComponent component;
+	private final int[] xs=new int[POINT_COUNT], ys=new int[POINT_COUNT];
+	private int next=0;
+	
+	@Setup
+	public void setup() {
+		ImageViewer viewer=BenchmarkSupport.createViewer(new BufferedImage(2000, 1500, BufferedImage.TYPE_INT_RGB), resizeStrategy, .7);
+		component=BenchmarkSupport.getImageComponent(viewer);
+		// the image does not fill the component, so some of the positions are outside it
+		Random random=new Random(0);
+		for (int i=0; i<POINT_COUNT; i++) {
+			xs[i]=random.nextInt(BenchmarkSupport.VIEW_WIDTH);
+			ys[i]=random.nextInt(BenchmarkSupport.VIEW_HEIGHT);
+		}
+	}
+	
+	@Benchmark
+	public AffineTransform getImageTransform() {
+		return component.getImageTransform();
+	}
+	
+	@Benchmark
+	public Point pointToPixel() {
+		int i=next;
+		next=(i+1) & (POINT_COUNT-1);
+		return component.pointToPixel(new Point(xs[i], ys[i]));
+	}
+}
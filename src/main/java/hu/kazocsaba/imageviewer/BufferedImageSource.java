@@ -0,0 +1,73 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * An image source backed by a {@code BufferedImage}. This is the source used by the viewer when an image is set with
+ * {@link ImageViewer#setImage(BufferedImage)}.
+ * @author Kazó Csaba
+ */
+public final class BufferedImageSource implements ImageSource {
+	private final BufferedImage image;
+
+	/**
+	 * Creates a new image source for the specified image.
+	 * @param image the image of this source
+	 * @throws NullPointerException if {@code image} is {@code null}
+	 */
+	public BufferedImageSource(BufferedImage image) {
+		if (image==null) throw new NullPointerException();
+		this.image = image;
+	}
+
+	/**
+	 * Returns the image of this source.
+	 * @return the image
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	@Override
+	public int getWidth() {
+		return image.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return image.getHeight();
+	}
+
+	@Override
+	public ColorModel getColorModel() {
+		return image.getColorModel();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * At full resolution, the returned image shares its data with the image of this source. Otherwise the top left
+	 * pixel of each block is used.
+	 */
+	@Override
+	public BufferedImage readRegion(int x, int y, int width, int height, int subsample) {
+		if (subsample<1) throw new IllegalArgumentException("Invalid subsample: "+subsample);
+		if (subsample==1)
+			return image.getSubimage(x, y, width, height);
+		int targetWidth=(width+subsample-1)/subsample, targetHeight=(height+subsample-1)/subsample;
+		Raster source=image.getRaster();
+		WritableRaster target=source.createCompatibleWritableRaster(targetWidth, targetHeight);
+		Object pixel=null;
+		for (int j=0; j<targetHeight; j++) {
+			for (int i=0; i<targetWidth; i++) {
+				pixel=source.getDataElements(x+i*subsample, y+j*subsample, pixel);
+				target.setDataElements(i, j, pixel);
+			}
+		}
+		ColorModel cm=image.getColorModel();
+		return new BufferedImage(cm, target, cm.isAlphaPremultiplied(), null);
+	}
+}
@@ -4,7 +4,6 @@ import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.LayoutManager;
-import java.awt.image.BufferedImage;
 import javax.swing.JViewport;
 
 /**
@@ -30,7 +29,7 @@ class CustomViewportLayout implements LayoutManager {
 
 	@Override
 	public Dimension preferredLayoutSize(Container parent) {
-		BufferedImage image = viewer.getImage();
+		ImageSource image = viewer.getImageSource();
 		if (image == null)
 			return new Dimension();
 		else
@@ -0,0 +1,30 @@
+package hu.kazocsaba.imageviewer;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the low priority daemon threads used for background work, so that they never prevent the application
+ * from exiting.
+ * @author Kazó Csaba
+ */
+class DaemonThreadFactory implements ThreadFactory {
+	private final String name;
+	private final AtomicInteger count=new AtomicInteger();
+
+	/**
+	 * Creates a new thread factory.
+	 * @param name the prefix of the names of the created threads
+	 */
+	public DaemonThreadFactory(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread thread=new Thread(r, name+"-"+count.incrementAndGet());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY-1);
+		return thread;
+	}
+}
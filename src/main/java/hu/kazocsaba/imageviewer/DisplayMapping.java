@@ -0,0 +1,255 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.util.Arrays;
+
+/**
+ * Describes how the samples of a single-band image are turned into displayed colours. This is the window/level
+ * (contrast) adjustment commonly used for images with a large dynamic range, like 12 or 16-bit or floating point
+ * images, which would otherwise appear almost entirely black.
+ * <p>
+ * The samples in the window {@code [center-width/2, center+width/2]} are mapped linearly onto {@code [0, 1]}, and the
+ * ones outside it are clamped. The result is raised to the power {@code gamma}, and finally it is displayed either
+ * as a grey level or as an entry of the colour map.
+ * <p>
+ * The mapping only affects how the image is displayed: the image itself is not modified or copied, and
+ * {@link PixelInfoStatusBar} still shows the original sample values. The viewer only maps the region that is being
+ * painted, through lookup tables, so changing the mapping is fast even for very large images. Images with more than
+ * one band and indexed images are displayed unchanged.
+ * <p>
+ * This class is immutable.
+ * @see ImageViewer#setDisplayMapping(DisplayMapping)
+ * @author Kazó Csaba
+ */
+public final class DisplayMapping {
+	/* The number of entries in the tone table; samples are quantized to this many levels within the window. */
+	private static final int TONE_LEVELS=4096;
+
+	private final double center, width, gamma;
+	private final int[] colorMap;
+	/* The displayed value for each quantized level, either a grey level or an RGB value. */
+	private final int[] tones;
+	/* Lookup tables indexed by the raw samples of 8 and 16-bit images, created when first needed. */
+	private volatile int[] byteTable, unsignedShortTable, shortTable;
+
+	/**
+	 * Creates a linear grey level mapping.
+	 * @param center the sample value displayed as medium grey
+	 * @param width the range of sample values between black and white
+	 * @throws IllegalArgumentException if {@code width} is not a positive number, or {@code center} is not finite
+	 */
+	public DisplayMapping(double center, double width) {
+		this(center, width, 1, null);
+	}
+
+	/**
+	 * Creates a new mapping.
+	 * @param center the sample value in the middle of the window
+	 * @param width the range of sample values mapped onto the whole output range
+	 * @param gamma the exponent applied to the relative position of a sample in the window; values above 1 darken and
+	 * values below 1 brighten the middle of the range
+	 * @param colorMap the RGB colours that the window is mapped onto, starting with the colour of the lowest values, or
+	 * {@code null} to display grey levels; the array is copied
+	 * @throws IllegalArgumentException if {@code width} or {@code gamma} is not a positive number, {@code center} is
+	 * not finite, or {@code colorMap} is empty
+	 */
+	public DisplayMapping(double center, double width, double gamma, int[] colorMap) {
+		if (Double.isNaN(center) || Double.isInfinite(center)) throw new IllegalArgumentException("Invalid center: "+center);
+		if (!(width>0) || Double.isInfinite(width)) throw new IllegalArgumentException("Invalid width: "+width);
+		if (!(gamma>0) || Double.isInfinite(gamma)) throw new IllegalArgumentException("Invalid gamma: "+gamma);
+		if (colorMap!=null && colorMap.length==0) throw new IllegalArgumentException("Empty colour map");
+		this.center=center;
+		this.width=width;
+		this.gamma=gamma;
+		this.colorMap=colorMap==null ? null : colorMap.clone();
+
+		tones=new int[TONE_LEVELS];
+		for (int i=0; i<TONE_LEVELS; i++) {
+			double value=Math.pow(i/(double)(TONE_LEVELS-1), gamma);
+			if (colorMap==null)
+				tones[i]=(int)Math.round(value*255);
+			else
+				tones[i]=colorMap[(int)Math.round(value*(colorMap.length-1))] & 0xffffff;
+		}
+	}
+
+	/**
+	 * Returns a mapping with the same gamma and colour map as this one, but a different window.
+	 * @param center the sample value in the middle of the window
+	 * @param width the range of sample values mapped onto the whole output range
+	 * @return a new mapping
+	 * @throws IllegalArgumentException if {@code width} is not a positive number, or {@code center} is not finite
+	 */
+	public DisplayMapping withWindow(double center, double width) {
+		return new DisplayMapping(center, width, gamma, colorMap);
+	}
+
+	/**
+	 * Returns the center of the window.
+	 * @return the sample value in the middle of the window
+	 */
+	public double getCenter() {
+		return center;
+	}
+
+	/**
+	 * Returns the width of the window.
+	 * @return the range of sample values mapped onto the whole output range
+	 */
+	public double getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the gamma of the mapping.
+	 * @return the exponent applied to the relative position of a sample in the window
+	 */
+	public double getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Returns the colour map.
+	 * @return a copy of the colour map, or {@code null} if the mapping displays grey levels
+	 */
+	public int[] getColorMap() {
+		return colorMap==null ? null : colorMap.clone();
+	}
+
+	/**
+	 * Returns whether a mapping can be applied to the specified image.
+	 * @return {@code true} if the image has a single band and is not indexed
+	 */
+	static boolean isSupported(BufferedImage image) {
+		return image.getRaster().getNumBands()==1 && !(image.getColorModel() instanceof IndexColorModel);
+	}
+
+	/**
+	 * Returns the index in the tone table for a sample value.
+	 */
+	private int tone(double sample) {
+		double t=(sample-(center-width/2))/width;
+		if (t<=0) return 0;
+		if (t>=1) return TONE_LEVELS-1;
+		return (int)(t*(TONE_LEVELS-1)+.5);
+	}
+
+	/**
+	 * Returns the table mapping all the possible values of an 8 or 16-bit sample to the displayed values. For signed
+	 * 16-bit samples the table is indexed by the sample plus 32768.
+	 */
+	private int[] getTable(int dataType) {
+		if (dataType==DataBuffer.TYPE_BYTE) {
+			int[] table=byteTable;
+			if (table==null) {
+				table=new int[256];
+				for (int i=0; i<table.length; i++) table[i]=tones[tone(i)];
+				byteTable=table;
+			}
+			return table;
+		} else if (dataType==DataBuffer.TYPE_USHORT) {
+			int[] table=unsignedShortTable;
+			if (table==null) {
+				table=new int[65536];
+				for (int i=0; i<table.length; i++) table[i]=tones[tone(i)];
+				unsignedShortTable=table;
+			}
+			return table;
+		} else {
+			int[] table=shortTable;
+			if (table==null) {
+				table=new int[65536];
+				for (int i=0; i<table.length; i++) table[i]=tones[tone(Short.MIN_VALUE+i)];
+				shortTable=table;
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Maps a region of an image. The result has the size {@code ceil(width/subsample)} by
+	 * {@code ceil(height/subsample)}, and its pixel (i, j) is the mapped value of the source pixel
+	 * ({@code x+i*subsample}, {@code y+j*subsample}). It is a grey level image if the mapping has no colour map, and an
+	 * RGB image otherwise.
+	 * @param image an image for which {@link #isSupported(BufferedImage)} is true
+	 * @param x the x coordinate of the top left corner of the region
+	 * @param y the y coordinate of the top left corner of the region
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * @param subsample the distance between the sampled pixels
+	 * @return a new image containing the displayed colours
+	 */
+	BufferedImage apply(BufferedImage image, int x, int y, int width, int height, int subsample) {
+		int targetWidth=(width+subsample-1)/subsample, targetHeight=(height+subsample-1)/subsample;
+		BufferedImage target=new BufferedImage(targetWidth, targetHeight, colorMap==null ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+		byte[] grey=colorMap==null ? ((DataBufferByte)target.getRaster().getDataBuffer()).getData() : null;
+		int[] rgb=colorMap==null ? null : ((DataBufferInt)target.getRaster().getDataBuffer()).getData();
+
+		Raster raster=image.getRaster();
+		DataBuffer buffer=raster.getDataBuffer();
+		SampleModel sampleModel=raster.getSampleModel();
+		int dataType=buffer.getDataType();
+		if (sampleModel instanceof ComponentSampleModel &&
+				(buffer instanceof DataBufferByte || buffer instanceof DataBufferUShort || buffer instanceof DataBufferShort) &&
+				buffer.getNumBanks()==1) {
+			// read the samples directly from the data array
+			ComponentSampleModel csm=(ComponentSampleModel)sampleModel;
+			int[] table=getTable(dataType);
+			int pixelStride=csm.getPixelStride()*subsample, scanlineStride=csm.getScanlineStride()*subsample;
+			int start=buffer.getOffset()+csm.getOffset(
+					x+raster.getMinX()-raster.getSampleModelTranslateX(), y+raster.getMinY()-raster.getSampleModelTranslateY(), 0);
+			byte[] bytes=buffer instanceof DataBufferByte ? ((DataBufferByte)buffer).getData() : null;
+			short[] shorts=buffer instanceof DataBufferUShort ? ((DataBufferUShort)buffer).getData() :
+					buffer instanceof DataBufferShort ? ((DataBufferShort)buffer).getData() : null;
+			int shortBase=dataType==DataBuffer.TYPE_SHORT ? -Short.MIN_VALUE : 0;
+			for (int j=0; j<targetHeight; j++) {
+				int offset=start+j*scanlineStride;
+				int targetOffset=j*targetWidth;
+				for (int i=0; i<targetWidth; i++, offset+=pixelStride) {
+					int value=bytes!=null ? table[bytes[offset] & 0xff] :
+							dataType==DataBuffer.TYPE_SHORT ? table[shorts[offset]+shortBase] : table[shorts[offset] & 0xffff];
+					if (grey!=null) grey[targetOffset+i]=(byte)value; else rgb[targetOffset+i]=value;
+				}
+			}
+		} else {
+			// general case, reading a row at a time
+			double[] row=new double[width];
+			for (int j=0; j<targetHeight; j++) {
+				raster.getSamples(raster.getMinX()+x, raster.getMinY()+y+j*subsample, width, 1, 0, row);
+				int targetOffset=j*targetWidth;
+				for (int i=0; i<targetWidth; i++) {
+					int value=tones[tone(row[i*subsample])];
+					if (grey!=null) grey[targetOffset+i]=(byte)value; else rgb[targetOffset+i]=value;
+				}
+			}
+		}
+		return target;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DisplayMapping)) return false;
+		DisplayMapping other=(DisplayMapping)obj;
+		return center==other.center && width==other.width && gamma==other.gamma && Arrays.equals(colorMap, other.colorMap);
+	}
+
+	@Override
+	public int hashCode() {
+		long bits=Double.doubleToLongBits(center)+31*Double.doubleToLongBits(width)+961*Double.doubleToLongBits(gamma);
+		return (int)(bits^(bits>>>32))*31+Arrays.hashCode(colorMap);
+	}
+
+	@Override
+	public String toString() {
+		return "DisplayMapping[center="+center+", width="+width+", gamma="+gamma+(colorMap==null ? "" : ", colorMap")+"]";
+	}
+}
@@ -0,0 +1,229 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * Loads the images of a sequence on a background thread and keeps the recently used ones in memory. When a position
+ * is requested, the images following it in the direction of travel are also loaded in advance.
+ * <p>
+ * The total size of the cached images is limited; when the limit is exceeded, the least recently used images are
+ * removed from the cache.
+ * <p>
+ * Each frame cache has its own loader thread, which only runs while there are images to load, so a frame cache that
+ * is no longer referenced does not keep a thread alive.
+ * @author Kazó Csaba
+ */
+class FrameCache {
+	/**
+	 * Receives the images which were not in the cache when they were requested. The methods are called on the event
+	 * dispatch thread, and only if the position is still the last one requested.
+	 */
+	interface Listener {
+		public void frameLoaded(int position, BufferedImage image);
+		public void frameFailed(int position, IOException e);
+	}
+
+	private final ImageSequenceLoader loader;
+	private final Listener listener;
+	/* The loader thread exits after being idle for a while, so an abandoned cache doesn't leak it. */
+	private final ThreadPoolExecutor executor=new ThreadPoolExecutor(1, 1, 2, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("ImageSequenceViewer-loader"));
+
+	/* Access to the fields below is synchronized on this object. */
+	private final LinkedHashMap<Integer, BufferedImage> frames=new LinkedHashMap<Integer, BufferedImage>(16, .75f, true);
+	private long cachedBytes=0;
+	private long maxBytes;
+	/* The positions still to be loaded, in order of priority. */
+	private final LinkedList<Integer> queue=new LinkedList<Integer>();
+	private int current=-1;
+	private boolean working=false;
+	/*
+	 * Images which are neither cached nor displayed, and can be passed to the loader for reuse. The image currently
+	 * displayed and the one being delivered to the listener are never recycled.
+	 */
+	private final LinkedList<BufferedImage> recycledImages=new LinkedList<BufferedImage>();
+	private BufferedImage displayed=null, delivering=null;
+	private static final int MAX_RECYCLED_IMAGES=2;
+
+	private final Runnable worker=new Runnable() {
+
+		@Override
+		public void run() {
+			while (true) {
+				int position;
+				BufferedImage recycled;
+				synchronized (FrameCache.this) {
+					if (queue.isEmpty()) {
+						working=false;
+						return;
+					}
+					position=queue.removeFirst();
+					if (frames.containsKey(position)) continue;
+					recycled=recycledImages.poll();
+				}
+				BufferedImage image=null;
+				IOException error=null;
+				try {
+					image=loader.loadImage(position, recycled);
+				} catch (IOException e) {
+					error=e;
+				}
+				boolean isCurrent;
+				synchronized (FrameCache.this) {
+					isCurrent=position==current;
+					if (isCurrent) delivering=image;
+					// null images are not cached, they are cheap to load again
+					if (error==null && image!=null) put(position, image);
+				}
+				if (isCurrent) deliver(position, image, error);
+			}
+		}
+	};
+
+	/**
+	 * Creates a new frame cache.
+	 * @param loader the loader used to read the images
+	 * @param listener the listener notified about images loaded in the background
+	 * @param maxBytes the maximum total size of the cached images
+	 */
+	public FrameCache(ImageSequenceLoader loader, Listener listener, long maxBytes) {
+		this.loader = loader;
+		this.listener = listener;
+		this.maxBytes = maxBytes;
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Requests the image at the specified position, and starts prefetching the images after it. If the image is in
+	 * the cache, it is returned immediately. Otherwise this function returns {@code null} and the listener will be
+	 * notified when the image is loaded, unless a different position is requested in the meantime.
+	 * @param position the position of the requested image
+	 * @param direction the direction of travel, either 1 or -1
+	 * @param prefetch the number of images to load in advance in the direction of travel
+	 * @param count the number of images in the sequence
+	 * @return the image if it is cached, otherwise {@code null}
+	 */
+	public synchronized BufferedImage request(int position, int direction, int prefetch, int count) {
+		current=position;
+		queue.clear();
+		queue.add(position);
+		for (int i=1; i<=prefetch; i++)
+			queue.add(position+i*direction);
+		// also keep the previous image around when reversing the direction
+		queue.add(position-direction);
+		for (Iterator<Integer> it=queue.iterator(); it.hasNext(); ) {
+			int p=it.next();
+			if (p<0 || p>=count || frames.containsKey(p)) it.remove();
+		}
+		if (!queue.isEmpty() && !working) {
+			working=true;
+			executor.execute(worker);
+		}
+		BufferedImage image=frames.get(position);
+		if (image!=null) delivering=image;
+		return image;
+	}
+
+	/**
+	 * Records which image is displayed by the viewer. The previously displayed image becomes available for reuse by
+	 * the loader if it is not in the cache.
+	 * @param image the image now displayed by the viewer
+	 */
+	public synchronized void setDisplayed(BufferedImage image) {
+		BufferedImage old=displayed;
+		displayed=image;
+		if (delivering==image) delivering=null;
+		if (old!=null && old!=image && !frames.containsValue(old))
+			recycle(old);
+	}
+
+	/**
+	 * Sets the maximum total size of the cached images, and evicts images if necessary.
+	 * @param maxBytes the new limit in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes=maxBytes;
+		evict();
+	}
+
+	/**
+	 * Stops loading images and discards the cache. The frame cache cannot be used after calling this function.
+	 */
+	public synchronized void dispose() {
+		queue.clear();
+		frames.clear();
+		recycledImages.clear();
+		cachedBytes=0;
+		current=-1;
+		executor.shutdown();
+	}
+
+	/** Returns whether the image at a position is in the cache. */
+	synchronized boolean isCached(int position) {
+		return frames.containsKey(position);
+	}
+
+	/** Returns whether images are being loaded in the background. */
+	synchronized boolean isLoading() {
+		return working;
+	}
+
+	private void put(int position, BufferedImage image) {
+		BufferedImage old=frames.put(position, image);
+		if (old!=null) cachedBytes-=sizeOf(old);
+		cachedBytes+=sizeOf(image);
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Integer, BufferedImage>> it=frames.entrySet().iterator();
+		while (cachedBytes>maxBytes && it.hasNext()) {
+			Map.Entry<Integer, BufferedImage> eldest=it.next();
+			if (eldest.getKey()==current) continue;
+			cachedBytes-=sizeOf(eldest.getValue());
+			it.remove();
+			recycle(eldest.getValue());
+		}
+	}
+
+	private void recycle(BufferedImage image) {
+		if (image!=displayed && image!=delivering && recycledImages.size()<MAX_RECYCLED_IMAGES)
+			recycledImages.add(image);
+	}
+
+	private void deliver(final int position, final BufferedImage image, final IOException error) {
+		SwingUtilities.invokeLater(new Runnable() {
+
+			@Override
+			public void run() {
+				synchronized (FrameCache.this) {
+					if (position!=current) {
+						if (delivering==image) delivering=null;
+						return;
+					}
+				}
+				if (error==null)
+					listener.frameLoaded(position, image);
+				else
+					listener.frameFailed(position, error);
+			}
+		});
+	}
+
+	/** Returns the approximate number of bytes used by the pixels of the image. */
+	static long sizeOf(BufferedImage image) {
+		if (image==null) return 0;
+		DataBuffer buffer=image.getRaster().getDataBuffer();
+		return (long)buffer.getSize()*buffer.getNumBanks()*DataBuffer.getDataTypeSize(buffer.getDataType())/8;
+	}
+}
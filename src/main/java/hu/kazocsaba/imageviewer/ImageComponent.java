@@ -1,14 +1,21 @@
 package hu.kazocsaba.imageviewer;
 
 import java.applet.Applet;
+import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
@@ -21,8 +28,13 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.swing.CellRendererPane;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.MouseInputListener;
@@ -33,21 +45,40 @@ import javax.swing.event.MouseInputListener;
  */
 class ImageComponent extends JComponent {
 	private ResizeStrategy resizeStrategy = ResizeStrategy.SHRINK_TO_FIT;
+	private ImageSource imageSource;
+	/* The image of the source if it is a BufferedImageSource, null otherwise. */
 	private BufferedImage image;
 	private boolean pixelatedZoom=false;
 	private Object interpolationType=RenderingHints.VALUE_INTERPOLATION_BICUBIC;
 	private double zoomFactor=1;
+	private boolean backgroundRescaling=false;
+	private boolean mouseMotionCoalescing=false;
+	private DisplayMapping displayMapping=null;
+	private boolean displayCopyEnabled=false;
+	/*
+	 * The image transform is computed when first needed after any of the values it depends on (the transformKey
+	 * fields) has changed. The scale and translation are also stored separately for hit testing.
+	 */
+	private final AffineTransform imageTransform=new AffineTransform();
+	private int transformKeyWidth=-1, transformKeyHeight, transformKeySourceWidth, transformKeySourceHeight;
+	private ResizeStrategy transformKeyStrategy;
+	private double transformKeyZoom;
+	private double transformScale, transformX, transformY;
+	/* null if metrics collection is disabled */
+	private PaintMetrics paintMetrics=null;
 	private final List<ImageMouseMotionListener> moveListeners = new ArrayList<ImageMouseMotionListener>(4);
 	private final List<ImageMouseClickListener> clickListeners = new ArrayList<ImageMouseClickListener>(4);
 	private final MouseEventTranslator mouseEventTranslator = new MouseEventTranslator();
 	private final PaintManager paintManager = new PaintManager();
+	/** The executor used for background rescaling, shared by all image components. */
+	private static ExecutorService rescaleExecutor;
 	
 	/* Handles repositioning the scroll pane when the image is resized so that the same area remains visible. */
 	class Rescroller {
 		private Point2D preparedCenter=null;
 		
 		void prepare() {
-			if (image!=null && hasSize()) {
+			if (imageSource!=null && hasSize()) {
 				Rectangle viewRect=viewer.getScrollPane().getViewport().getViewRect();
 				preparedCenter=new Point2D.Double(viewRect.getCenterX(), viewRect.getCenterY());
 				try {
@@ -79,6 +110,14 @@ class ImageComponent extends JComponent {
 		this.propertyChangeSupport=propertyChangeSupport;
 		mouseEventTranslator.register(this);
 		setOpaque(true);
+		addComponentListener(new ComponentAdapter() {
+
+			@Override
+			public void componentResized(ComponentEvent e) {
+				paintManager.cancelBackgroundRescaling();
+			}
+			
+		});
 		viewer.getScrollPane().getViewport().addChangeListener(new ChangeListener() {
 
 			@Override
@@ -93,7 +132,7 @@ class ImageComponent extends JComponent {
 		});
 	}
 	
-	private boolean hasSize() {
+	boolean hasSize() {
 		return getWidth()>0 && getHeight()>0;
 	}
 	
@@ -123,32 +162,63 @@ class ImageComponent extends JComponent {
 	}
 	
 	public void setImage(BufferedImage newImage) {
+		if (newImage!=null && newImage==image) {
+			// keep the current source, only refresh
+			setImageSource(imageSource);
+			propertyChangeSupport.firePropertyChange("imageContents", null, imageSource);
+		} else
+			setImageSource(newImage==null ? null : new BufferedImageSource(newImage));
+	}
+
+	public void setImageSource(ImageSource newSource) {
+		ImageSource oldSource = imageSource;
 		BufferedImage oldImage = image;
-		image = newImage;
+		imageSource = newSource;
+		image = newSource instanceof BufferedImageSource ? ((BufferedImageSource)newSource).getImage() : null;
 		paintManager.notifyChanged();
-		if (oldImage != newImage &&
-				(oldImage == null || newImage == null || oldImage.getWidth() != newImage.getWidth() ||
-				oldImage.getHeight() != newImage.getHeight()))
+		paintManager.updateDisplayCopy();
+		if (oldSource != newSource &&
+				(oldSource == null || newSource == null || oldSource.getWidth() != newSource.getWidth() ||
+				oldSource.getHeight() != newSource.getHeight()))
 			revalidate();
 		repaint();
-		propertyChangeSupport.firePropertyChange("image", oldImage, newImage);
+		propertyChangeSupport.firePropertyChange("imageSource", oldSource, newSource);
+		propertyChangeSupport.firePropertyChange("image", oldImage, image);
 	}
 
 	public BufferedImage getImage() {
 		return image;
 	}
+
+	public ImageSource getImageSource() {
+		return imageSource;
+	}
 	/**
 	 * Preforms all necessary actions to ensure that the viewer is resized to its proper size. It does that by invoking
 	 * {@code validate()} on the viewer's validateRoot. It also issues a {@code repaint()}.
+	 * <p>
+	 * If the change is propagated from another, synchronized viewer, the validation is left to the synchronizer, which
+	 * validates each root only once for the whole group.
 	 */
 	private void resizeNow() {
 		invalidate();
+		Container root=getValidateRoot();
+		if (root == null) return;
+		if (!viewer.getSynchronizer().deferValidation(viewer, root))
+			root.validate();
+		repaint();
+	}
+	/**
+	 * Returns the container that should be validated after this component has been invalidated, or {@code null} if
+	 * the component is not showing.
+	 */
+	private Container getValidateRoot() {
 		// find the validate root; adapted from the package-private SwingUtilities.getValidateRoot
 		Container root = null;
 		Container c=this;
 		for (; c != null; c = c.getParent()) {
 			if (!c.isDisplayable() || c instanceof CellRendererPane) {
-				return;
+				return null;
 			}
 			if (c.isValidateRoot()) {
 				root = c;
@@ -156,21 +226,19 @@ class ImageComponent extends JComponent {
 			}
 		}
 
-		if (root == null) return;
+		if (root == null) return null;
 
 		for (; c != null; c = c.getParent()) {
 			if (!c.isDisplayable() || !c.isVisible()) {
-				return;
+				return null;
 			}
 			if (c instanceof Window || c instanceof Applet) {
 				break;
 			}
 		}
 
-		if (c==null) return;
-		
-		root.validate();
-		repaint();
+		if (c==null) return null;
+		return root;
 	}
 	public void setResizeStrategy(ResizeStrategy resizeStrategy) {
 		if (resizeStrategy == this.resizeStrategy)
@@ -198,8 +266,9 @@ class ImageComponent extends JComponent {
 		if (
 				type!=RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR &&
 				type!=RenderingHints.VALUE_INTERPOLATION_BILINEAR &&
-				type!=RenderingHints.VALUE_INTERPOLATION_BICUBIC)
-			throw new IllegalArgumentException("Invalid interpolation type; use one of the RenderingHints constants");
+				type!=RenderingHints.VALUE_INTERPOLATION_BICUBIC &&
+				!(type instanceof ResamplingFilter))
+			throw new IllegalArgumentException("Invalid interpolation type; use one of the RenderingHints constants or a ResamplingFilter");
 		Object old=this.interpolationType;
 		this.interpolationType=type;
 		viewer.getSynchronizer().interpolationTypeChanged(viewer);
@@ -226,6 +295,83 @@ class ImageComponent extends JComponent {
 		return pixelatedZoom;
 	}
 	
+	public void setBackgroundRescaling(boolean backgroundRescaling) {
+		if (backgroundRescaling == this.backgroundRescaling)
+			return;
+		this.backgroundRescaling = backgroundRescaling;
+		paintManager.notifyChanged();
+		repaint();
+		propertyChangeSupport.firePropertyChange("backgroundRescaling", !backgroundRescaling, backgroundRescaling);
+	}
+	
+	public boolean isBackgroundRescaling() {
+		return backgroundRescaling;
+	}
+	
+	public void setMouseMotionCoalescing(boolean mouseMotionCoalescing) {
+		if (mouseMotionCoalescing == this.mouseMotionCoalescing)
+			return;
+		this.mouseMotionCoalescing = mouseMotionCoalescing;
+		if (!mouseMotionCoalescing) mouseEventTranslator.flushMotion();
+		propertyChangeSupport.firePropertyChange("mouseMotionCoalescing", !mouseMotionCoalescing, mouseMotionCoalescing);
+	}
+	
+	public boolean isMouseMotionCoalescing() {
+		return mouseMotionCoalescing;
+	}
+	
+	public void setDisplayMapping(DisplayMapping mapping) {
+		if (mapping==displayMapping || (mapping!=null && mapping.equals(displayMapping)))
+			return;
+		DisplayMapping old=displayMapping;
+		displayMapping=mapping;
+		paintManager.mappingChanged();
+		repaint();
+		propertyChangeSupport.firePropertyChange("displayMapping", old, mapping);
+	}
+	
+	public DisplayMapping getDisplayMapping() {
+		return displayMapping;
+	}
+	
+	public void imageUpdated(Rectangle region) {
+		if (imageSource==null) return;
+		Rectangle changed=region.intersection(new Rectangle(0, 0, imageSource.getWidth(), imageSource.getHeight()));
+		if (changed.isEmpty()) return;
+		paintManager.imageUpdated(changed);
+		propertyChangeSupport.firePropertyChange("imageContents", null, imageSource);
+	}
+	
+	public void setDisplayCopyEnabled(boolean displayCopyEnabled) {
+		if (displayCopyEnabled == this.displayCopyEnabled)
+			return;
+		this.displayCopyEnabled = displayCopyEnabled;
+		paintManager.updateDisplayCopy();
+		propertyChangeSupport.firePropertyChange("displayCopyEnabled", !displayCopyEnabled, displayCopyEnabled);
+	}
+	
+	public boolean isDisplayCopyEnabled() {
+		return displayCopyEnabled;
+	}
+	
+	/**
+	 * Returns the copy of the image that is painted instead of it, or {@code null} if it is not ready or not needed.
+	 */
+	BufferedImage getDisplayCopy() {
+		return paintManager.displayCopy;
+	}
+	
+	public void setPaintMetricsEnabled(boolean enabled) {
+		if (enabled == (paintMetrics != null))
+			return;
+		paintMetrics = enabled ? new PaintMetrics() : null;
+		propertyChangeSupport.firePropertyChange("paintMetricsEnabled", !enabled, enabled);
+	}
+	
+	public PaintMetrics getPaintMetrics() {
+		return paintMetrics;
+	}
+	
 	/** Returns the zoom factor used when resize strategy is CUSTOM_ZOOM. */
 	public double getZoomFactor() {
 		return zoomFactor;
@@ -246,6 +392,7 @@ class ImageComponent extends JComponent {
 		}
 		double oldZoomFactor=zoomFactor;
 		zoomFactor=newZoomFactor;
+		paintManager.cancelBackgroundRescaling();
 		boolean canRescroll=viewer.getSynchronizer().zoomFactorChangedCanIRescroll(viewer);
 		if (getResizeStrategy()==ResizeStrategy.CUSTOM_ZOOM) {
 			resizeNow();
@@ -263,12 +410,12 @@ class ImageComponent extends JComponent {
 	}
 	@Override
 	public Dimension getPreferredSize() {
-		if (image == null) {
+		if (imageSource == null) {
 			return new Dimension();
 		} else if (resizeStrategy==ResizeStrategy.CUSTOM_ZOOM) {
-			return new Dimension((int)Math.ceil(image.getWidth()*zoomFactor), (int)Math.ceil(image.getHeight()*zoomFactor));
+			return new Dimension((int)Math.ceil(imageSource.getWidth()*zoomFactor), (int)Math.ceil(imageSource.getHeight()*zoomFactor));
 		} else
-			return new Dimension(image.getWidth(), image.getHeight());
+			return new Dimension(imageSource.getWidth(), imageSource.getHeight());
 	}
 
 	/**
@@ -294,15 +441,11 @@ class ImageComponent extends JComponent {
 	 * it is not in a visible component)
 	 */
 	public Point pointToPixel(Point p, boolean clipToImage) {
-		Point2D.Double fp=new Point2D.Double(p.x+.5, p.y+.5);
-		try {
-			getImageTransform().inverseTransform(fp, fp);
-		} catch (NoninvertibleTransformException ex) {
-			throw new Error("Image transformation not invertible");
-		}
-		p.x=(int)Math.floor(fp.x);
-		p.y=(int)Math.floor(fp.y);
-		if (clipToImage && (p.x < 0 || p.y < 0 || p.x >= image.getWidth() || p.y >= image.getHeight())) {
+		updateImageTransform();
+		// this is the same computation as the inverse transformation, but without allocating a Point2D
+		p.x=(int)Math.floor((p.x+.5-transformX)/transformScale);
+		p.y=(int)Math.floor((p.y+.5-transformY)/transformScale);
+		if (clipToImage && (p.x < 0 || p.y < 0 || p.x >= imageSource.getWidth() || p.y >= imageSource.getHeight())) {
 			return null;
 		}
 		return p;
@@ -324,8 +467,23 @@ class ImageComponent extends JComponent {
 	 * it is not in a visible component)
 	 */
 	public AffineTransform getImageTransform() {
-		if (getImage()==null) throw new IllegalStateException("No image");
+		updateImageTransform();
+		return imageTransform;
+	}
+	
+	/**
+	 * Recomputes the cached image transform if any of the values it depends on has changed since it was last computed.
+	 * @throws IllegalStateException if there is no image set or if the size of the component is 0
+	 */
+	private void updateImageTransform() {
+		if (imageSource==null) throw new IllegalStateException("No image");
 		if (!hasSize()) throw new IllegalStateException("Viewer size is zero");
+		int width=getWidth(), height=getHeight();
+		int sourceWidth=imageSource.getWidth(), sourceHeight=imageSource.getHeight();
+		if (width==transformKeyWidth && height==transformKeyHeight &&
+				sourceWidth==transformKeySourceWidth && sourceHeight==transformKeySourceHeight &&
+				resizeStrategy==transformKeyStrategy && zoomFactor==transformKeyZoom)
+			return;
 		double currentZoom;
 		switch (resizeStrategy) {
 			case NO_RESIZE:
@@ -343,14 +501,26 @@ class ImageComponent extends JComponent {
 			default:
 				throw new Error("Unhandled resize strategy");
 		}
-		AffineTransform tr=new AffineTransform();
-		tr.setToTranslation((getWidth()-image.getWidth()*currentZoom)/2.0, (getHeight()-image.getHeight()*currentZoom)/2.0);
-		tr.scale(currentZoom, currentZoom);
-		return tr;
+		transformScale=currentZoom;
+		transformX=(width-sourceWidth*currentZoom)/2.0;
+		transformY=(height-sourceHeight*currentZoom)/2.0;
+		imageTransform.setTransform(currentZoom, 0, 0, currentZoom, transformX, transformY);
+		transformKeyWidth=width;
+		transformKeyHeight=height;
+		transformKeySourceWidth=sourceWidth;
+		transformKeySourceHeight=sourceHeight;
+		transformKeyStrategy=resizeStrategy;
+		transformKeyZoom=zoomFactor;
+	}
+
+	static synchronized ExecutorService getRescaleExecutor() {
+		if (rescaleExecutor==null)
+			rescaleExecutor=Executors.newSingleThreadExecutor(new DaemonThreadFactory("ImageViewer-rescaler"));
+		return rescaleExecutor;
 	}
 
 	private double getSizeRatio() {
-		return Math.min(getWidth() / (double) image.getWidth(), getHeight() / (double) image.getHeight());
+		return Math.min(getWidth() / (double) imageSource.getWidth(), getHeight() / (double) imageSource.getHeight());
 	}
 	/**
 	 * Helper class that generates ImageMouseEvents by translating normal mouse events onto
@@ -364,6 +534,27 @@ class ImageComponent extends JComponent {
 		 * with the same position.
 		 */
 		private Point lastPosition=null;
+		/* Reused for converting the mouse positions, so that mouse motion creates no garbage. */
+		private final Point position=new Point();
+		/*
+		 * In coalescing mode, motion events are collected in pendingEvent, and delivered when the timer fires, or when
+		 * another kind of event has to be fired.
+		 */
+		private static final int MOTION_NONE=0, MOTION_MOVED=1, MOTION_DRAGGED=2;
+		/* The interval between coalesced events in milliseconds, about one frame of a 60 Hz display. */
+		private static final int COALESCING_INTERVAL=16;
+		private ImageMouseEvent pendingEvent=null;
+		private int pendingMotion=MOTION_NONE;
+		private final Timer coalescingTimer=new Timer(COALESCING_INTERVAL, new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				flushMotion();
+			}
+		});
+		{
+			coalescingTimer.setRepeats(false);
+		}
 		
 		/** Sets up this translator. */
 		private void register(ImageComponent ic) {
@@ -380,36 +571,47 @@ class ImageComponent extends JComponent {
 			});
 		}
 		
-		private void handleMouseAt(Point position, MouseEvent event) {
-			if (image==null) {
-				if (on) {
-					on=false;
-					fireMouseExit();
-				}
+		private void handleMouseAt(Point mousePosition, MouseEvent event) {
+			if (mousePosition==null)
+				handleMouseExit();
+			else
+				handleMouseAt(mousePosition.x, mousePosition.y, event);
+		}
+		
+		private void handleMouseExit() {
+			if (on) {
+				on=false;
+				fireMouseExit();
+			}
+		}
+		
+		private void handleMouseAt(int x, int y, MouseEvent event) {
+			if (imageSource==null) {
+				handleMouseExit();
+				return;
+			}
+			position.setLocation(x, y);
+			if (pointToPixel(position)==null) {
+				handleMouseExit();
 			} else {
-				if (position!=null) position=pointToPixel(position);
-				if (position==null) {
-					if (on) {
-						on=false;
-						fireMouseExit();
-					}
-				} else {
-					if (!on) {
-						on=true;
-						lastPosition=null;
-						fireMouseEnter(position.x, position.y, event);
-					}
-					if (!position.equals(lastPosition)) {
-						lastPosition=position;
-						fireMouseAtPixel(position.x, position.y, event);
-					}
+				if (!on) {
+					on=true;
+					lastPosition=null;
+					fireMouseEnter(position.x, position.y, event);
+				}
+				if (!position.equals(lastPosition)) {
+					if (lastPosition==null)
+						lastPosition=new Point(position);
+					else
+						lastPosition.setLocation(position);
+					fireMouseAtPixel(position.x, position.y, event);
 				}
 			}
 		}
 
 		@Override
 		public void mouseClicked(MouseEvent e) {
-			if (image == null || !on) return;
+			if (imageSource == null || !on) return;
 			Point p = pointToPixel(e.getPoint());
 			if (p != null) {
 				fireMouseClickedAtPixel(p.x, p.y, e);
@@ -417,7 +619,7 @@ class ImageComponent extends JComponent {
 		}
 		@Override
 		public void mouseEntered(MouseEvent e) {
-			if (image != null) {
+			if (imageSource != null) {
 				Point p=pointToPixel(e.getPoint());
 				if (p!=null) {
 					on=true;
@@ -436,20 +638,21 @@ class ImageComponent extends JComponent {
 		}
 		@Override
 		public void mouseMoved(MouseEvent e) {
-			handleMouseAt(e.getPoint(), e);
+			handleMouseAt(e.getX(), e.getY(), e);
 		}
 
 		@Override
 		public void mouseDragged(MouseEvent e) {
-			if (image==null) return;
-			Point p = pointToPixel(e.getPoint(), false);
-			fireMouseDrag(p.x, p.y, e);
+			if (imageSource==null) return;
+			position.setLocation(e.getX(), e.getY());
+			pointToPixel(position, false);
+			fireMouseDrag(position.x, position.y, e);
 		}
 		
 		@Override
 		public void propertyChange(PropertyChangeEvent evt) {
 			if (
-					"image".equals(evt.getPropertyName()) ||
+					"imageSource".equals(evt.getPropertyName()) ||
 					"resizeStrategy".equals(evt.getPropertyName()) ||
 					(getResizeStrategy()==ResizeStrategy.CUSTOM_ZOOM && "zoomFactor".equals(evt.getPropertyName()))) {
 				correctionalFire();
@@ -465,60 +668,110 @@ class ImageComponent extends JComponent {
 			 * We use our parent, LayeredImageView, to locate the mouse. If the viewer has an overlay, then
 			 * ImageComponent.getMousePosition will return null because the mouse is over the overlay and not the image
 			 * component.
+			 * In a headless environment there is no mouse, and getMousePosition would throw an exception.
 			 */
-			handleMouseAt(getParent().getMousePosition(true), null);
+			handleMouseAt(GraphicsEnvironment.isHeadless() ? null : getParent().getMousePosition(true), null);
+		}
+
+		/**
+		 * Adds a motion event to the pending coalesced event. If the pending event is of a different kind, it is
+		 * delivered first.
+		 */
+		private void queueMotion(int motion, int x, int y, MouseEvent ev) {
+			if (pendingMotion!=motion) flushMotion();
+			if (moveListeners.isEmpty()) return;
+			if (pendingEvent==null) pendingEvent=new ImageMouseEvent(viewer, imageSource, x, y, ev);
+			pendingEvent.addPosition(imageSource, x, y, ev);
+			pendingMotion=motion;
+			if (!coalescingTimer.isRunning()) coalescingTimer.start();
+		}
+		
+		/**
+		 * Delivers the pending coalesced motion event, if there is one.
+		 */
+		private void flushMotion() {
+			if (pendingMotion==MOTION_NONE) return;
+			int motion=pendingMotion;
+			pendingMotion=MOTION_NONE;
+			coalescingTimer.stop();
+			for (ImageMouseMotionListener imageMouseMoveListener: moveListeners) {
+				if (motion==MOTION_MOVED)
+					imageMouseMoveListener.mouseMoved(pendingEvent);
+				else
+					imageMouseMoveListener.mouseDragged(pendingEvent);
+			}
+			pendingEvent.clearPositions();
 		}
 
 		private void fireMouseAtPixel(int x, int y, MouseEvent ev) {
+			if (mouseMotionCoalescing) {
+				queueMotion(MOTION_MOVED, x, y, ev);
+				return;
+			}
 			ImageMouseEvent e = null;
 			for (ImageMouseMotionListener imageMouseMoveListener: moveListeners) {
 				if (e == null)
-					e = new ImageMouseEvent(viewer, image, x, y, ev);
+					e = new ImageMouseEvent(viewer, imageSource, x, y, ev);
 				imageMouseMoveListener.mouseMoved(e);
 			}
 		}
 
 		private void fireMouseClickedAtPixel(int x, int y, MouseEvent ev) {
+			flushMotion();
 			ImageMouseEvent e = null;
 			for (ImageMouseClickListener imageMouseClickListener: clickListeners) {
 				if (e == null)
-					e = new ImageMouseEvent(viewer, image, x, y, ev);
+					e = new ImageMouseEvent(viewer, imageSource, x, y, ev);
 				imageMouseClickListener.mouseClicked(e);
 			}
 		}
 
 		private void fireMouseEnter(int x, int y, MouseEvent ev) {
+			flushMotion();
 			ImageMouseEvent e = null;
 			for (ImageMouseMotionListener imageMouseMoveListener: moveListeners) {
 				if (e == null)
-					e = new ImageMouseEvent(viewer, image, x, y, ev);
+					e = new ImageMouseEvent(viewer, imageSource, x, y, ev);
 				imageMouseMoveListener.mouseEntered(e);
 			}
 		}
 
 		private void fireMouseExit() {
+			flushMotion();
 			ImageMouseEvent e = null;
 			for (ImageMouseMotionListener imageMouseMoveListener: moveListeners) {
 				if (e == null)
-					e = new ImageMouseEvent(viewer, image, -1, -1, null);
+					e = new ImageMouseEvent(viewer, imageSource, -1, -1, null);
 				imageMouseMoveListener.mouseExited(e);
 			}
 		}
 		
 		private void fireMouseDrag(int x, int y, MouseEvent ev) {
+			if (mouseMotionCoalescing) {
+				queueMotion(MOTION_DRAGGED, x, y, ev);
+				return;
+			}
 			ImageMouseEvent e = null;
 			for (ImageMouseMotionListener imageMouseMoveListener: moveListeners) {
 				if (e == null)
-					e = new ImageMouseEvent(viewer, image, x, y, ev);
+					e = new ImageMouseEvent(viewer, imageSource, x, y, ev);
 				imageMouseMoveListener.mouseDragged(e);
 			}
 		}
 
+		/*
+		 * Presses and releases are not translated, but the listeners of the component must see them after the motion
+		 * preceding them. This listener is registered first, so it is notified before them.
+		 */
 		@Override
-		public void mousePressed(MouseEvent e) {}
+		public void mousePressed(MouseEvent e) {
+			flushMotion();
+		}
 
 		@Override
-		public void mouseReleased(MouseEvent e) {}
+		public void mouseReleased(MouseEvent e) {
+			flushMotion();
+		}
 	}
 	
 	/**
@@ -528,48 +781,480 @@ class ImageComponent extends JComponent {
 		BufferedImage cachedImage=null;
 		boolean cachedImageChanged=false;
 		AffineTransform cachedTransform;
+		/* The area of the cached image that has to be redrawn because the image was partially updated, or null. */
+		Rectangle cacheDirty=null;
+		/*
+		 * Successively halved versions of the image, used when shrinking so that the cost of painting does not
+		 * depend on the resolution of the image. It is created when first needed after the image has changed.
+		 */
+		MipmapPyramid pyramid=null;
+		/*
+		 * Rendered tiles of the image, used with custom zoom when the component can be much larger than the visible
+		 * area.
+		 */
+		final TileCache tileCache=new TileCache();
+		/*
+		 * When background rescaling is enabled, the high quality version of the shrunk image is computed by this
+		 * job, while cachedImage holds a quick approximation. The job only replaces the cache if the generation
+		 * has not changed since it was started.
+		 */
+		Future<?> rescaleJob=null;
+		int rescaleGeneration=0;
+		/*
+		 * When the displayCopyEnabled property is set, this is a copy of the image in the pixel format of the screen,
+		 * which is painted instead of the image. It is created in the background by the job; until it is ready, the
+		 * image itself is painted.
+		 */
+		BufferedImage displayCopy=null;
+		Future<?> displayCopyJob=null;
+		int displayCopyGeneration=0;
+		/* The region of the image updated while the display copy job was running, or null. */
+		Rectangle displayCopyDirty=null;
 
 		private void doPaint(Graphics2D gg, AffineTransform imageTransform) {
 			gg.setColor(getBackground());
 			gg.fillRect(0, 0, getWidth(), getHeight());
-
+			drawImage(gg, imageTransform);
+		}
+		/** Draws the image with the current interpolation settings, but without painting the background. */
+		private void drawImage(Graphics2D gg, AffineTransform imageTransform) {
+			Object interpolation=getEffectiveInterpolation(imageTransform);
+			ensurePyramid(imageTransform, interpolation);
+			drawImage(gg, getPaintedImage(), pyramid, imageTransform, interpolation, displayMapping);
+		}
+		/**
+		 * Returns the image that should be painted: the display copy, if it is ready and no display mapping has to be
+		 * applied to the original samples, and the image otherwise.
+		 */
+		private BufferedImage getPaintedImage() {
+			if (displayCopy==null || (displayMapping!=null && DisplayMapping.isSupported(image)))
+				return image;
+			return displayCopy;
+		}
+		/** Creates the pyramid of the painted image if it is needed and does not exist yet. */
+		private void ensurePyramid(AffineTransform imageTransform, Object interpolation) {
+			BufferedImage painted=getPaintedImage();
+			if (pyramid!=null && pyramid.getImage()!=painted) pyramid=null;
+			if (pyramid==null && imageTransform.getScaleX()<=.5 && interpolation!=RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR &&
+					MipmapPyramid.isSupported(painted))
+				pyramid=new MipmapPyramid(painted);
+		}
+		/**
+		 * Draws the image with the specified settings. This method does not access the state of the component, so it
+		 * can also be called from a background thread.
+		 */
+		private void drawImage(Graphics2D gg, BufferedImage image, MipmapPyramid pyramid, AffineTransform imageTransform, Object interpolation, DisplayMapping mapping) {
 			gg.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			gg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, toRenderingHint(interpolation));
+
+			if (pyramid!=null && imageTransform.getScaleX()<=.5 && interpolation!=RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
+				int level=pyramid.levelFor(imageTransform.getScaleX());
+				BufferedImage levelImage=pyramid.getLevel(level);
+				AffineTransform levelTransform=new AffineTransform(imageTransform);
+				levelTransform.scale(image.getWidth()/(double)levelImage.getWidth(), image.getHeight()/(double)levelImage.getHeight());
+				drawMapped(gg, levelImage, levelTransform, interpolation, mapping);
+			} else
+				drawMapped(gg, image, imageTransform, interpolation, mapping);
+		}
+		/**
+		 * Draws an image through a display mapping. Only the part of the image that is inside the clip is mapped, and
+		 * when shrinking without interpolation, only the pixels that can actually appear.
+		 */
+		private void drawMapped(Graphics2D gg, BufferedImage image, AffineTransform imageTransform, Object interpolation, DisplayMapping mapping) {
+			if (mapping==null || !DisplayMapping.isSupported(image)) {
+				gg.drawImage(image, imageTransform, null);
+				return;
+			}
+			Rectangle region=new Rectangle(0, 0, image.getWidth(), image.getHeight());
+			Rectangle clip=gg.getClipBounds();
+			if (clip!=null) {
+				try {
+					Rectangle visible=imageTransform.createInverse().createTransformedShape(clip).getBounds();
+					// a margin of a few pixels is mapped around the area so that the interpolation is continuous
+					visible.grow(2, 2);
+					region=region.intersection(visible);
+				} catch (NoninvertibleTransformException e) {
+					return;
+				}
+				if (region.isEmpty()) return;
+			}
+			int subsample=1;
+			if (interpolation==RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)
+				while (subsample*2*imageTransform.getScaleX()<=1 && subsample<(1<<30)) subsample*=2;
+			// align the region so that all tiles sample the same pixels
+			region.width+=region.x%subsample;
+			region.x-=region.x%subsample;
+			region.height+=region.y%subsample;
+			region.y-=region.y%subsample;
+
+			BufferedImage mapped=mapping.apply(image, region.x, region.y, region.width, region.height, subsample);
+			AffineTransform mappedTransform=new AffineTransform(imageTransform);
+			mappedTransform.translate(region.x, region.y);
+			mappedTransform.scale(subsample, subsample);
+			gg.drawImage(mapped, mappedTransform, null);
+		}
+		/** Returns the interpolation hint to use where a resampling filter cannot be applied. */
+		private Object toRenderingHint(Object interpolation) {
+			return interpolation instanceof ResamplingFilter ? ((ResamplingFilter)interpolation).getRenderingHint() : interpolation;
+		}
+		private Object getEffectiveInterpolation(AffineTransform imageTransform) {
 			if (pixelatedZoom && imageTransform.getScaleX()>=1)
-				gg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+				return RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
 			else
-				gg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationType);
-
-			gg.drawImage(image, imageTransform, ImageComponent.this);
+				return interpolationType;
+		}
+		/**
+		 * Creates an image suitable for fast drawing onto this component. It also works when the component is not
+		 * displayable and there is no graphics configuration.
+		 */
+		private BufferedImage createCompatibleImage(int width, int height, int transparency) {
+			return createCompatibleImage(getGraphicsConfiguration(), width, height, transparency);
+		}
+		/**
+		 * Creates an image suitable for fast drawing with a graphics configuration, which can be {@code null}. This
+		 * method can be called from any thread.
+		 */
+		private BufferedImage createCompatibleImage(GraphicsConfiguration gc, int width, int height, int transparency) {
+			if (gc!=null)
+				return gc.createCompatibleImage(width, height, transparency);
+			else
+				return new BufferedImage(width, height, transparency==Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
 		}
 		private void ensureCachedValid(AffineTransform imageTransform) {
 			boolean cacheValid;
 
 			// create the image if necessary; if the existing one is sufficiently large, use it
 			if (cachedImage==null || cachedImage.getWidth()<getWidth() || cachedImage.getHeight()<getHeight()) {
-				cachedImage=getGraphicsConfiguration().createCompatibleImage(getWidth(), getHeight());
+				cachedImage=createCompatibleImage(getWidth(), getHeight(), Transparency.OPAQUE);
 				cacheValid=false;
 			} else {
 				cacheValid = cachedTransform.equals(imageTransform) && !cachedImageChanged;
 			}
+			if (paintMetrics!=null) paintMetrics.cacheAccessed(cacheValid);
 
 
 			if (!cacheValid) {
-				Graphics2D gg=cachedImage.createGraphics();
-				doPaint(gg, imageTransform);
-				gg.dispose();
+				cancelBackgroundRescaling();
+				if (backgroundRescaling) {
+					renderImage(cachedImage, new Rectangle(0, 0, getWidth(), getHeight()), getBackground(), getPaintedImage(), null, imageTransform,
+							RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, displayMapping);
+					startBackgroundRescaling(imageTransform);
+				} else {
+					Object interpolation=getEffectiveInterpolation(imageTransform);
+					ensurePyramid(imageTransform, interpolation);
+					renderImage(cachedImage, new Rectangle(0, 0, getWidth(), getHeight()), getBackground(), getPaintedImage(), pyramid, imageTransform, interpolation, displayMapping);
+				}
 				cachedImageChanged=false;
 				cachedTransform=new AffineTransform(imageTransform);
+			} else if (cacheDirty!=null) {
+				// only a part of the image has been updated
+				Rectangle area=cacheDirty.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+				if (!area.isEmpty()) {
+					Object interpolation=getEffectiveInterpolation(imageTransform);
+					ensurePyramid(imageTransform, interpolation);
+					renderImage(cachedImage, area, getBackground(), getPaintedImage(), pyramid, imageTransform, interpolation, displayMapping);
+				}
+			}
+			cacheDirty=null;
+		}
+		/**
+		 * Renders the image over the background into an area of the target. When shrinking with a
+		 * resampling filter, the filter writes directly into the target. This method does not access the state of the
+		 * component, so it can also be called from a background thread.
+		 */
+		private void renderImage(BufferedImage target, Rectangle area, Color background, BufferedImage image,
+				MipmapPyramid pyramid, AffineTransform imageTransform, Object interpolation, DisplayMapping mapping) {
+			Graphics2D gg=target.createGraphics();
+			gg.clip(area);
+			gg.setColor(background);
+			gg.fill(area);
+			if (interpolation instanceof ResamplingFilter && imageTransform.getScaleX()<1) {
+				// the colour actually filled, since the background of the component may not be set
+				Color fill=gg.getColor();
+				gg.dispose();
+				ResamplingFilter filter=(ResamplingFilter)interpolation;
+				double translateX=imageTransform.getTranslateX(), translateY=imageTransform.getTranslateY();
+				if (mapping!=null && DisplayMapping.isSupported(image)) {
+					// map a reduced resolution version that is still at least twice as large as the displayed image
+					BufferedImage source=pyramid==null ? image : pyramid.getLevel(pyramid.levelFor(Math.min(1, 2*imageTransform.getScaleX())));
+					double scale=imageTransform.getScaleX()*image.getWidth()/source.getWidth();
+					// only the pixels that the filter reads for the area are mapped
+					Rectangle region=ParallelResampler.getSourceRegion(source.getWidth(), source.getHeight(), scale, translateX, translateY, filter, area);
+					if (region.isEmpty()) return;
+					BufferedImage mapped=mapping.apply(source, region.x, region.y, region.width, region.height, 1);
+					ParallelResampler.resample(mapped, region.x, region.y, source.getWidth(), source.getHeight(), target,
+							scale, translateX, translateY, filter, fill, area);
+				} else
+					ParallelResampler.resample(image, target, imageTransform.getScaleX(), translateX, translateY, filter, fill, area);
+			} else {
+				drawImage(gg, image, pyramid, imageTransform, interpolation, mapping);
+				gg.dispose();
 			}
 		}
+		/**
+		 * Starts rendering the high quality version of the cached image in the background. When it is done, the
+		 * result replaces the cached image, unless the job has been cancelled in the meantime.
+		 */
+		private void startBackgroundRescaling(AffineTransform imageTransform) {
+			final int generation=rescaleGeneration;
+			final BufferedImage target=createCompatibleImage(cachedImage.getWidth(), cachedImage.getHeight(), Transparency.OPAQUE);
+			final BufferedImage source=getPaintedImage();
+			final Color background=getBackground();
+			final int width=getWidth(), height=getHeight();
+			final AffineTransform transform=new AffineTransform(imageTransform);
+			final Object interpolation=getEffectiveInterpolation(imageTransform);
+			final DisplayMapping mapping=displayMapping;
+			ensurePyramid(imageTransform, interpolation);
+			final MipmapPyramid sourcePyramid=pyramid;
+			rescaleJob=getRescaleExecutor().submit(new Runnable() {
+
+				@Override
+				public void run() {
+					renderImage(target, new Rectangle(0, 0, width, height), background, source, sourcePyramid, transform, interpolation, mapping);
+					SwingUtilities.invokeLater(new Runnable() {
+
+						@Override
+						public void run() {
+							if (generation==rescaleGeneration) {
+								cachedImage=target;
+								rescaleJob=null;
+								repaint();
+							}
+						}
+					});
+				}
+			});
+		}
+		/**
+		 * Cancels the pending background rescaling job, if any. The approximation currently in the cache is not
+		 * replaced by the job even if it has already finished.
+		 */
+		public void cancelBackgroundRescaling() {
+			rescaleGeneration++;
+			if (rescaleJob!=null) {
+				rescaleJob.cancel(false);
+				rescaleJob=null;
+				// the cache only holds the approximation, so it must be redrawn
+				cachedImageChanged=true;
+			}
+		}
+		/**
+		 * Paints only the tiles of the image that intersect the clip. Tiles are rendered when first needed and then
+		 * reused as long as the scale and the interpolation stay the same, so scrolling only needs to copy them.
+		 */
+		private void paintTiles(Graphics g, AffineTransform imageTransform) {
+			Rectangle clip=g.getClipBounds();
+			if (clip==null) clip=new Rectangle(0, 0, getWidth(), getHeight());
+			g.setColor(getBackground());
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+			double scale=imageTransform.getScaleX();
+			int originX=(int)Math.floor(imageTransform.getTranslateX());
+			int originY=(int)Math.floor(imageTransform.getTranslateY());
+			double offsetX=imageTransform.getTranslateX()-originX;
+			double offsetY=imageTransform.getTranslateY()-originY;
+			int imageWidth=(int)Math.ceil(offsetX+imageSource.getWidth()*scale);
+			int imageHeight=(int)Math.ceil(offsetY+imageSource.getHeight()*scale);
+
+			Rectangle visible=clip.intersection(new Rectangle(originX, originY, imageWidth, imageHeight));
+			if (visible.isEmpty()) return;
+			int firstColumn=(visible.x-originX)/TileCache.TILE_SIZE;
+			int lastColumn=(visible.x+visible.width-1-originX)/TileCache.TILE_SIZE;
+			int firstRow=(visible.y-originY)/TileCache.TILE_SIZE;
+			int lastRow=(visible.y+visible.height-1-originY)/TileCache.TILE_SIZE;
+			tileCache.setVisibleTileCount((lastColumn-firstColumn+1)*(lastRow-firstRow+1));
+
+			Object interpolation=getEffectiveInterpolation(imageTransform);
+			int misses=0;
+			for (int row=firstRow; row<=lastRow; row++) {
+				for (int column=firstColumn; column<=lastColumn; column++) {
+					TileCache.Key key=new TileCache.Key(column, row, scale, offsetX, offsetY, interpolation);
+					BufferedImage tile=tileCache.get(key);
+					if (tile==null) {
+						misses++;
+						int tileX=column*TileCache.TILE_SIZE, tileY=row*TileCache.TILE_SIZE;
+						tile=createCompatibleImage(
+								Math.min(TileCache.TILE_SIZE, imageWidth-tileX),
+								Math.min(TileCache.TILE_SIZE, imageHeight-tileY),
+								Transparency.TRANSLUCENT);
+						AffineTransform tileTransform=AffineTransform.getTranslateInstance(offsetX-tileX, offsetY-tileY);
+						tileTransform.scale(scale, scale);
+						Graphics2D gg=tile.createGraphics();
+						gg.clipRect(0, 0, tile.getWidth(), tile.getHeight());
+						if (image!=null)
+							drawImage(gg, tileTransform);
+						else
+							drawSourceRegion(gg, tileTransform, tile.getWidth(), tile.getHeight());
+						gg.dispose();
+						tileCache.put(key, tile);
+					}
+					g.drawImage(tile, originX+column*TileCache.TILE_SIZE, originY+row*TileCache.TILE_SIZE, ImageComponent.this);
+				}
+			}
+			if (paintMetrics!=null)
+				paintMetrics.tilesAccessed((lastColumn-firstColumn+1)*(lastRow-firstRow+1)-misses, misses);
+		}
+		/**
+		 * Draws the part of the image source that is visible in a rectangle of the specified size at the origin.
+		 * Only that region is read from the source, at the lowest resolution that is still not smaller than the
+		 * displayed size.
+		 */
+		private void drawSourceRegion(Graphics2D gg, AffineTransform imageTransform, int width, int height) {
+			double scale=imageTransform.getScaleX();
+			int subsample=1;
+			while (subsample*2*scale<=1 && subsample<(1<<30)) subsample*=2;
+			// a margin of a few pixels is read around the area so that the interpolation is continuous between tiles
+			int margin=2*subsample;
+			int x0=(int)Math.floor(-imageTransform.getTranslateX()/scale)-margin;
+			int y0=(int)Math.floor(-imageTransform.getTranslateY()/scale)-margin;
+			// align the region so that all tiles sample the same pixels
+			x0=Math.max(0, x0-x0%subsample);
+			y0=Math.max(0, y0-y0%subsample);
+			int x1=(int)Math.min(imageSource.getWidth(), Math.ceil((width-imageTransform.getTranslateX())/scale)+margin);
+			int y1=(int)Math.min(imageSource.getHeight(), Math.ceil((height-imageTransform.getTranslateY())/scale)+margin);
+			if (x0>=x1 || y0>=y1) return;
+
+			BufferedImage region=imageSource.readRegion(x0, y0, x1-x0, y1-y0, subsample);
+			if (displayMapping!=null && DisplayMapping.isSupported(region))
+				region=displayMapping.apply(region, 0, 0, region.getWidth(), region.getHeight(), 1);
+			gg.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			gg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, toRenderingHint(getEffectiveInterpolation(imageTransform)));
+			gg.clip(imageTransform.createTransformedShape(new Rectangle(0, 0, imageSource.getWidth(), imageSource.getHeight())));
+			AffineTransform regionTransform=new AffineTransform(imageTransform);
+			regionTransform.translate(x0, y0);
+			regionTransform.scale(subsample, subsample);
+			gg.drawImage(region, regionTransform, null);
+		}
 		/**
 		 * Called when a property which affects how the component is painted changes. This invalidates the cache and causes
 		 * it to be redrawn upon the next paint request.
 		 */
 		public void notifyChanged() {
+			cancelBackgroundRescaling();
+			cachedImageChanged=true;
+			pyramid=null;
+			tileCache.clear();
+		}
+		/**
+		 * Discards the display copy and starts creating a new one if the displayCopyEnabled property is set. Called
+		 * when the image or the property changes.
+		 */
+		public void updateDisplayCopy() {
+			displayCopyGeneration++;
+			displayCopyDirty=null;
+			if (displayCopyJob!=null) {
+				displayCopyJob.cancel(false);
+				displayCopyJob=null;
+			}
+			if (displayCopy!=null) {
+				displayCopy=null;
+				notifyChanged();
+				repaint();
+			}
+			if (!displayCopyEnabled || image==null) return;
+
+			final int transparency=image.getColorModel().getTransparency()==Transparency.OPAQUE ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+			final GraphicsConfiguration gc=getGraphicsConfiguration();
+			int displayType=createCompatibleImage(gc, 1, 1, transparency).getType();
+			// nothing to do if the image is already in the display format
+			if (displayType!=BufferedImage.TYPE_CUSTOM && displayType==image.getType()) return;
+
+			final int generation=displayCopyGeneration;
+			final BufferedImage source=image;
+			displayCopyJob=getRescaleExecutor().submit(new Runnable() {
+
+				@Override
+				public void run() {
+					final BufferedImage copy=createCompatibleImage(gc, source.getWidth(), source.getHeight(), transparency);
+					ParallelResampler.copy(source, copy);
+					SwingUtilities.invokeLater(new Runnable() {
+
+						@Override
+						public void run() {
+							if (generation==displayCopyGeneration) {
+								if (displayCopyDirty!=null) copyRegion(source, copy, displayCopyDirty);
+								displayCopyDirty=null;
+								displayCopy=copy;
+								displayCopyJob=null;
+								notifyChanged();
+								repaint();
+							}
+						}
+					});
+				}
+			});
+		}
+		/**
+		 * Copies a region of the image into the display copy.
+		 */
+		private void copyRegion(BufferedImage source, BufferedImage copy, Rectangle region) {
+			Graphics2D gg=copy.createGraphics();
+			gg.setComposite(AlphaComposite.Src);
+			gg.drawImage(source.getSubimage(region.x, region.y, region.width, region.height), region.x, region.y, null);
+			gg.dispose();
+		}
+		/**
+		 * Called when a region of the image has been modified. The parts of the caches that show the region are
+		 * updated or invalidated, and the corresponding area of the component is repainted.
+		 */
+		public void imageUpdated(Rectangle region) {
+			if (image!=null) {
+				if (displayCopy!=null)
+					copyRegion(image, displayCopy, region);
+				else if (displayCopyJob!=null)
+					// the job may have already copied the region
+					displayCopyDirty=displayCopyDirty==null ? new Rectangle(region) : displayCopyDirty.union(region);
+				if (pyramid!=null) pyramid.update(region);
+			}
+			if (!hasSize()) {
+				// there is no transform to locate the region with; the renderings are redrawn when the viewer is shown
+				cancelBackgroundRescaling();
+				cachedImageChanged=true;
+				tileCache.clear();
+				return;
+			}
+
+			AffineTransform imageTransform=getImageTransform();
+			// the number of pixels around the area that interpolation can affect
+			int margin=(int)Math.ceil(3*Math.max(1, imageTransform.getScaleX()))+1;
+			tileCache.invalidate(region, margin);
+
+			Rectangle area=imageTransform.createTransformedShape(region).getBounds();
+			area.grow(margin, margin);
+			if (rescaleJob!=null)
+				// the high quality image being computed may already be out of date, so the cache is redrawn entirely
+				cancelBackgroundRescaling();
+			else if (!cachedImageChanged)
+				cacheDirty=cacheDirty==null ? area : cacheDirty.union(area);
+			repaint(area);
+		}
+		/**
+		 * Called when the display mapping changes. The reduced resolution versions of the image hold the original
+		 * samples, so they are kept, but everything rendered from them is redrawn.
+		 */
+		public void mappingChanged() {
+			cancelBackgroundRescaling();
 			cachedImageChanged=true;
+			tileCache.clear();
 		}
 		public void paintComponent(Graphics g) {
-			if (image==null) {
+			if (paintMetrics==null) {
+				paint(g);
+			} else {
+				long start=System.nanoTime();
+				paint(g);
+				paintMetrics.paintFinished(System.nanoTime()-start, getCachedBytes());
+			}
+		}
+		/**
+		 * Returns the number of bytes held by the caches.
+		 */
+		private long getCachedBytes() {
+			return FrameCache.sizeOf(cachedImage)+(pyramid==null ? 0 : pyramid.getCachedBytes())+tileCache.getCachedBytes()+
+					FrameCache.sizeOf(displayCopy);
+		}
+		private void paint(Graphics g) {
+			if (imageSource==null) {
 				Graphics2D gg=(Graphics2D)g.create();
 				gg.setColor(getBackground());
 				gg.fillRect(0, 0, getWidth(), getHeight());
@@ -579,7 +1264,17 @@ class ImageComponent extends JComponent {
 
 			AffineTransform imageTransform = getImageTransform();
 
-			if (imageTransform.getScaleX()<1 && interpolationType!=RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
+			if (image==null) {
+				// the source is not backed by an image, only the visible regions can be read
+				paintTiles(g, imageTransform);
+			} else if (resizeStrategy==ResizeStrategy.CUSTOM_ZOOM && imageTransform.getScaleX()!=1 &&
+					(imageTransform.getScaleX()>1 || interpolationType!=RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)) {
+				/*
+				 * With custom zoom the component can be many times larger than the viewport. Only the visible tiles
+				 * are rendered, and they are kept for subsequent scrolling.
+				 */
+				paintTiles(g, imageTransform);
+			} else if (imageTransform.getScaleX()<1 && interpolationType!=RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
 				/* 
 				* We're shrinking the image; instead of letting the Graphics object do it every time, we do it and cache
 				* the result.
@@ -588,6 +1283,7 @@ class ImageComponent extends JComponent {
 				g.drawImage(cachedImage, 0, 0, ImageComponent.this);
 			} else {
 				// draw the image directly
+				if (paintMetrics!=null) paintMetrics.directPaint();
 				Graphics2D gg=(Graphics2D)g.create();
 				doPaint(gg, imageTransform);
 				gg.dispose();
@@ -2,16 +2,24 @@ package hu.kazocsaba.imageviewer;
 
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.EventObject;
 
 /**
  * An event indicating that a mouse action occured over an image.
+ * <p>
+ * If {@link ImageViewer#setMouseMotionCoalescing(boolean) mouse motion coalescing} is enabled, the same event object
+ * is reused for successive motion events, so listeners should not keep a reference to it.
  * @author Kazó Csaba
  */
 public class ImageMouseEvent extends EventObject {
 	private BufferedImage image;
+	private ImageSource imageSource;
 	private int x,y;
 	private MouseEvent orig;
+	/* The coalesced positions as x,y pairs, if this is a coalesced motion event. */
+	private int[] path;
+	private int pathLength=0;
 	public ImageMouseEvent(Object source, BufferedImage image, int x, int y, MouseEvent orig) {
 		super(source);
 		this.image=image;
@@ -19,13 +27,31 @@ public class ImageMouseEvent extends EventObject {
 		this.y=y;
 		this.orig=orig;
 	}
+	public ImageMouseEvent(Object source, ImageSource imageSource, int x, int y, MouseEvent orig) {
+		super(source);
+		this.imageSource=imageSource;
+		this.image=imageSource instanceof BufferedImageSource ? ((BufferedImageSource)imageSource).getImage() : null;
+		this.x=x;
+		this.y=y;
+		this.orig=orig;
+	}
 	/**
 	 * Returns the image on which the event occured.
-	 * @return the image
+	 * @return the image, or {@code null} if the event occured over an image source that is not a
+	 * {@link BufferedImageSource}
 	 */
 	public BufferedImage getImage() {
 		return image;
 	}
+	/**
+	 * Returns the image source on which the event occured.
+	 * @return the image source
+	 */
+	public ImageSource getImageSource() {
+		if (imageSource==null && image!=null)
+			imageSource=new BufferedImageSource(image);
+		return imageSource;
+	}
 	/**
 	 * Returns the x coordinate of the pixel related to the event.
 	 * @return the x coordinate of the pixel related to the event
@@ -40,6 +66,66 @@ public class ImageMouseEvent extends EventObject {
 	public int getY() {
 		return y;
 	}
+	/**
+	 * Returns the number of positions that this event represents. Motion events are only coalesced if
+	 * {@link ImageViewer#setMouseMotionCoalescing(boolean) coalescing} is enabled for the viewer; in this case a
+	 * single event can stand for several pixels that the mouse moved over since the previous event. For all other
+	 * events this method returns 1.
+	 * @return the number of coalesced positions, at least 1
+	 */
+	public int getCoalescedCount() {
+		return pathLength==0 ? 1 : pathLength;
+	}
+	/**
+	 * Returns the x coordinate of a coalesced position. The positions are in the order the mouse visited them; the
+	 * last one is the position of this event.
+	 * @param index the index of the position, between 0 and {@code getCoalescedCount()-1}
+	 * @return the x coordinate of the pixel
+	 * @throws IndexOutOfBoundsException if the index is invalid
+	 * @see #getCoalescedCount()
+	 */
+	public int getCoalescedX(int index) {
+		if (index<0 || index>=getCoalescedCount()) throw new IndexOutOfBoundsException("Invalid index: "+index);
+		return pathLength==0 ? x : path[2*index];
+	}
+	/**
+	 * Returns the y coordinate of a coalesced position. The positions are in the order the mouse visited them; the
+	 * last one is the position of this event.
+	 * @param index the index of the position, between 0 and {@code getCoalescedCount()-1}
+	 * @return the y coordinate of the pixel
+	 * @throws IndexOutOfBoundsException if the index is invalid
+	 * @see #getCoalescedCount()
+	 */
+	public int getCoalescedY(int index) {
+		if (index<0 || index>=getCoalescedCount()) throw new IndexOutOfBoundsException("Invalid index: "+index);
+		return pathLength==0 ? y : path[2*index+1];
+	}
+	/**
+	 * Adds a new position to a coalesced event, making it the position of the event.
+	 */
+	void addPosition(ImageSource imageSource, int x, int y, MouseEvent orig) {
+		if (imageSource!=this.imageSource) {
+			this.imageSource=imageSource;
+			this.image=imageSource instanceof BufferedImageSource ? ((BufferedImageSource)imageSource).getImage() : null;
+		}
+		this.x=x;
+		this.y=y;
+		this.orig=orig;
+		if (path==null)
+			path=new int[32];
+		else if (2*pathLength==path.length)
+			path=Arrays.copyOf(path, 2*path.length);
+		path[2*pathLength]=x;
+		path[2*pathLength+1]=y;
+		pathLength++;
+	}
+	/**
+	 * Removes all positions from a coalesced event so that it can be reused.
+	 */
+	void clearPositions() {
+		pathLength=0;
+		orig=null;
+	}
 	/**
 	 * Returns the mouse event that caused this image mouse event. This can occasionally be <code>null</code>, for
 	 * example for the exit event fired when the image is set to <code>null</code>.
@@ -0,0 +1,26 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Interface for loading the images of an {@link ImageSequenceViewer}. The loader is called on a background thread,
+ * and it may be called for positions that are never displayed when the viewer prefetches images.
+ * @see ImageSequenceViewer#setImageLoader(ImageSequenceLoader)
+ * @author Kazó Csaba
+ */
+public interface ImageSequenceLoader {
+	/**
+	 * Loads the image at the specified position of the sequence. This method is not called on the event dispatch
+	 * thread, and it is never called concurrently from multiple threads.
+	 * <p>
+	 * To avoid allocating a new image for every frame, the viewer passes an image that it previously received from
+	 * the loader and no longer uses. If it has the right size and type, the loader can decode the new image into it
+	 * and return it. The loader is free to ignore this parameter.
+	 * @param position the position of the image in the sequence
+	 * @param recycled an image previously returned by this loader that can be reused, or {@code null}
+	 * @return the image at the specified position; can be {@code null}
+	 * @throws IOException if the image cannot be loaded
+	 */
+	public BufferedImage loadImage(int position, BufferedImage recycled) throws IOException;
+}
@@ -4,22 +4,63 @@ import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 /**
  * A component for displaying a series of images. Supports paging through GUI as well as setting the current
  * position via function {@link #setPosition(int)}. When the position is changed, the {@link #positionChanged()}
  * method is called. Subclasses should override this method to update the image according to the new position.
+ * <p>
+ * Alternatively, an {@link #setImageLoader(ImageSequenceLoader) image loader} can be set. The viewer then loads the
+ * images on a background thread, prefetching the images which are likely to be displayed next, and keeps the
+ * recently displayed images in memory.
+ * <p>
+ * The viewer can also {@link #play() play} the sequence at a specified {@link #setFrameRate(double) frame rate}. If
+ * loading or painting the images cannot keep up with the frame rate, frames are skipped to maintain the playback
+ * speed; the number of frames skipped is available from {@link #getDroppedFrameCount()}. A button for starting and
+ * stopping playback can be shown with {@link #setPlaybackControlsVisible(boolean)}.
  * @author Kazó Csaba
  */
 public class ImageSequenceViewer {
 
 	private final ImageViewer imageViewer;
 	private int number,  position;
-	private JButton forwardButton, backwardButton;
+	/* The direction of the last position change, 1 or -1. */
+	private int direction=1;
+	private ImageSequenceLoader imageLoader;
+	private FrameCache frameCache;
+	private int prefetchCount=4;
+	private long cacheSize=256L*1024*1024;
+	/* The position whose image is shown by the viewer, or -1 if it is not known. */
+	private int displayedPosition=-1;
+	
+	private double frameRate=25;
+	private final Timer playbackTimer;
+	/* The time and position at which playback started, used to compute the frame that should be displayed. */
+	private long playbackStartTime;
+	private int playbackStartPosition;
+	private int droppedFrames=0;
+	/* True while the playback timer changes the position, false for all other position changes. */
+	private boolean advancing=false;
+	private final FrameCache.Listener frameCacheListener=new FrameCache.Listener() {
+
+		@Override
+		public void frameLoaded(int position, BufferedImage image) {
+			showImage(position, image);
+		}
+
+		@Override
+		public void frameFailed(int position, IOException e) {
+			imageLoadFailed(position, e);
+		}
+	};
+	private JButton forwardButton, backwardButton, playButton;
 	private JLabel locationLabel;
 	
 	private JPanel panel=new JPanel(new BorderLayout()) {
@@ -59,10 +100,33 @@ public class ImageSequenceViewer {
 
 		forwardButton = new JButton(">");
 		backwardButton = new JButton("<");
+		playButton = new JButton("Play");
+		playButton.setVisible(false);
 		JPanel locationPanel = new JPanel(new FlowLayout());
 		locationPanel.add(backwardButton);
 		locationPanel.add(createLocationDefinition());
 		locationPanel.add(forwardButton);
+		locationPanel.add(playButton);
+		
+		playbackTimer = new Timer(0, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				advancePlayback(System.nanoTime());
+			}
+		});
+		playbackTimer.setCoalesce(true);
+		updatePlaybackTimerDelay();
+		playButton.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (isPlaying())
+					pause();
+				else
+					play();
+			}
+		});
 
 		forwardButton.addActionListener(new ActionListener() {
 
@@ -106,6 +170,209 @@ public class ImageSequenceViewer {
 		return imageViewer;
 	}
 
+	/**
+	 * Sets the loader used to read the images of the sequence. When a loader is set, the viewer displays the image
+	 * returned by the loader for the current position, in addition to calling {@link #positionChanged()}. Images are
+	 * loaded on a background thread; until the image of the new position is loaded, the previous image remains
+	 * visible.
+	 * <p>
+	 * The viewer also loads the next few images in the direction of travel in advance (see
+	 * {@link #setPrefetchCount(int)}), and keeps recently loaded images in memory up to the limit set by
+	 * {@link #setCacheSize(long)}. The images are loaded by a thread of the viewer, which stops when there is nothing
+	 * to load, so it is not necessary to remove the loader before discarding the viewer.
+	 * @param loader the new image loader; if {@code null}, the images are no longer loaded automatically
+	 */
+	public void setImageLoader(ImageSequenceLoader loader) {
+		if (loader==imageLoader) return;
+		if (frameCache!=null) frameCache.dispose();
+		imageLoader=loader;
+		frameCache=loader==null ? null : new FrameCache(loader, frameCacheListener, cacheSize);
+		if (frameCache!=null) requestImage();
+	}
+
+	/**
+	 * Returns the current image loader.
+	 * @return the image loader, or {@code null} if none is set
+	 */
+	public ImageSequenceLoader getImageLoader() {
+		return imageLoader;
+	}
+
+	/**
+	 * Sets the number of images loaded in advance when an image loader is used. The default is 4.
+	 * @param prefetchCount the number of images to load ahead of the current position
+	 * @throws IllegalArgumentException if {@code prefetchCount} is negative
+	 */
+	public void setPrefetchCount(int prefetchCount) {
+		if (prefetchCount<0) throw new IllegalArgumentException("Negative prefetch count");
+		this.prefetchCount=prefetchCount;
+	}
+
+	/**
+	 * Returns the number of images loaded in advance when an image loader is used.
+	 * @return the prefetch count
+	 */
+	public int getPrefetchCount() {
+		return prefetchCount;
+	}
+
+	/**
+	 * Sets the maximum amount of memory used by the images cached by the image loader mechanism. The size of an image
+	 * is estimated as the size of its pixel data. The default is 256 MB.
+	 * @param bytes the cache size in bytes
+	 * @throws IllegalArgumentException if {@code bytes} is negative
+	 */
+	public void setCacheSize(long bytes) {
+		if (bytes<0) throw new IllegalArgumentException("Negative cache size");
+		cacheSize=bytes;
+		if (frameCache!=null) frameCache.setMaxBytes(bytes);
+	}
+
+	/**
+	 * Returns the maximum amount of memory used by the cached images.
+	 * @return the cache size in bytes
+	 */
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Called when the image loader failed to load the image at the current position. The default implementation
+	 * clears the image of the viewer.
+	 * @param pos the position of the image that could not be loaded
+	 * @param e the exception thrown by the loader
+	 */
+	protected void imageLoadFailed(int pos, IOException e) {
+		imageViewer.setImage(null);
+	}
+
+	/** Displays the image of the current position if it is cached, otherwise starts loading it. */
+	private void requestImage() {
+		BufferedImage image=frameCache.request(position, direction, prefetchCount, number);
+		if (image!=null) showImage(position, image);
+	}
+	
+	private void showImage(int pos, BufferedImage image) {
+		imageViewer.setImage(image);
+		displayedPosition=pos;
+		frameCache.setDisplayed(image);
+	}
+
+	/**
+	 * Starts playing the sequence from the current position at the current frame rate. If the current position is
+	 * the last one, playback starts from the beginning. Playback stops when the last image is reached.
+	 */
+	public void play() {
+		if (isPlaying()) return;
+		if (position == number - 1) setPosition(0);
+		droppedFrames = 0;
+		playbackStartTime = System.nanoTime();
+		playbackStartPosition = position;
+		playbackTimer.start();
+		playButton.setText("Pause");
+	}
+
+	/**
+	 * Sets whether the button for starting and stopping playback is shown next to the paging buttons. The default is
+	 * {@code false}; playback can still be controlled through {@link #play()} and {@link #pause()}.
+	 * @param visible whether the playback button should be visible
+	 */
+	public void setPlaybackControlsVisible(boolean visible) {
+		playButton.setVisible(visible);
+	}
+
+	/**
+	 * Returns whether the button for starting and stopping playback is shown.
+	 * @return {@code true} if the playback button is visible
+	 */
+	public boolean isPlaybackControlsVisible() {
+		return playButton.isVisible();
+	}
+
+	/**
+	 * Stops playing the sequence. The current position remains unchanged.
+	 */
+	public void pause() {
+		playbackTimer.stop();
+		playButton.setText("Play");
+	}
+
+	/**
+	 * Returns whether the sequence is currently being played.
+	 * @return {@code true} if playback is in progress
+	 */
+	public boolean isPlaying() {
+		return playbackTimer.isRunning();
+	}
+
+	/**
+	 * Sets the number of images displayed per second during playback. The default is 25.
+	 * @param fps the new frame rate
+	 * @throws IllegalArgumentException if {@code fps} is not a positive number
+	 */
+	public void setFrameRate(double fps) {
+		if (fps <= 0 || Double.isInfinite(fps) || Double.isNaN(fps))
+			throw new IllegalArgumentException("Invalid frame rate: " + fps);
+		if (isPlaying()) {
+			// continue from the current position with the new rate
+			playbackStartTime = System.nanoTime();
+			playbackStartPosition = position;
+		}
+		frameRate = fps;
+		updatePlaybackTimerDelay();
+	}
+
+	/**
+	 * Returns the number of images displayed per second during playback.
+	 * @return the frame rate
+	 */
+	public double getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Returns the number of frames skipped since playback was last started, because loading or painting the images
+	 * could not keep up with the frame rate.
+	 * @return the number of dropped frames
+	 */
+	public int getDroppedFrameCount() {
+		return droppedFrames;
+	}
+
+	private void updatePlaybackTimerDelay() {
+		int delay = Math.max(1, (int)Math.round(1000 / frameRate));
+		playbackTimer.setDelay(delay);
+		playbackTimer.setInitialDelay(delay);
+	}
+
+	/**
+	 * Moves to the frame that should be displayed at the current time. The frame is computed from the time elapsed
+	 * since the playback started, so frames are skipped if the timer events are late.
+	 * @param now the current time, as returned by {@code System.nanoTime()}
+	 */
+	void advancePlayback(long now) {
+		if (!isPlaying()) return;
+		long elapsed = now - playbackStartTime;
+		int target = (int)Math.min(number - 1, playbackStartPosition + (long)(elapsed * frameRate / 1e9));
+		if (target <= position) {
+			if (position == number - 1) pause();
+			return;
+		}
+		int skipped = target - position - 1;
+		if (frameCache != null && displayedPosition != position) {
+			// the image of the current position was not loaded in time
+			skipped++;
+		}
+		droppedFrames += skipped;
+		advancing = true;
+		try {
+			setPosition(target);
+		} finally {
+			advancing = false;
+		}
+		if (target == number - 1) pause();
+	}
+
 	/**
 	 * Sets the position of the viewer.
 	 * @param pos the new position of the viewer
@@ -114,7 +381,15 @@ public class ImageSequenceViewer {
 	public void setPosition(int pos) {
 		if (pos < 0 || pos >= number)
 			throw new IllegalArgumentException("Position " + pos + " out of range");
+		if (pos != position)
+			direction = pos > position ? 1 : -1;
+		if (!advancing && isPlaying()) {
+			// continue playing from the new position, instead of catching up with the old timeline
+			playbackStartTime = System.nanoTime();
+			playbackStartPosition = pos;
+		}
 		position = pos;
+		if (frameCache != null) requestImage();
 		updateLocationDefinition(position);
 		forwardButton.setEnabled(position < number - 1);
 		backwardButton.setEnabled(position > 0);
@@ -0,0 +1,49 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+
+/**
+ * A source of image data that the viewer can display. Unlike a {@code BufferedImage}, an image source does not need
+ * to keep all its pixels in memory: the viewer only requests the regions that are visible, at a resolution matching
+ * the current zoom. This makes it possible to display images that would not fit in a single {@code BufferedImage}.
+ * <p>
+ * The image viewer calls the methods of the image source on the event dispatch thread, so they should return quickly.
+ * Regular images can be displayed through {@link BufferedImageSource}.
+ * @see ImageViewer#setImageSource(ImageSource)
+ * @author Kazó Csaba
+ */
+public interface ImageSource {
+	/**
+	 * Returns the width of the image.
+	 * @return the width of the image in pixels
+	 */
+	public int getWidth();
+	/**
+	 * Returns the height of the image.
+	 * @return the height of the image in pixels
+	 */
+	public int getHeight();
+	/**
+	 * Returns the colour model of the images returned by {@link #readRegion(int, int, int, int, int)}. This describes
+	 * the pixel format of the image.
+	 * @return the colour model of the image
+	 */
+	public ColorModel getColorModel();
+	/**
+	 * Reads a rectangular region of the image, optionally at a reduced resolution. The returned image has the size
+	 * {@code ceil(width/subsample)} by {@code ceil(height/subsample)}, and its pixel (i, j) corresponds to the
+	 * {@code subsample} by {@code subsample} block of the image starting at ({@code x+i*subsample}, {@code y+j*subsample}).
+	 * Implementations can either pick one pixel of the block or average them.
+	 * <p>
+	 * The region is always within the bounds of the image. The viewer does not modify the returned image, so it may
+	 * share its data with the source.
+	 * @param x the x coordinate of the top left corner of the region
+	 * @param y the y coordinate of the top left corner of the region
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * @param subsample the reduction factor; 1 means full resolution
+	 * @return an image containing the specified region
+	 */
+	public BufferedImage readRegion(int x, int y, int width, int height, int subsample);
+}
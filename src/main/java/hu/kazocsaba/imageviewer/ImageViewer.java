@@ -4,6 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.LayoutManager;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
@@ -202,19 +203,55 @@ public final class ImageViewer {
 	/**
 	 * Sets the image displayed by the viewer. If the argument is the same object as the image currently being displayed,
 	 * then this method will trigger a refresh. If you modify the image shown by the viewer, use this function to notify
-	 * the component and cause it to update.
+	 * the component and cause it to update; in this case, an {@code imageContents} property change event is fired
+	 * instead of an {@code imageSource} event, with a {@code null} old value.
 	 * @param image the new image to display; if <code>null</code> then no image is displayed
 	 */
 	public void setImage(BufferedImage image) {
 		theImage.setImage(image);
 	}
+	/**
+	 * Notifies the viewer that a region of the displayed image has been modified. Unlike calling
+	 * {@link #setImage(BufferedImage)} with the same image, this only updates the parts of the cached renderings that
+	 * show the region, and only repaints the corresponding part of the viewer, so the cost of an update is proportional
+	 * to the size of the region and not to the size of the image. This method also works with image sources.
+	 * <p>
+	 * Like the other methods of the viewer, this method must be called on the event dispatch thread, and the image
+	 * should not be modified while it is being painted. Listeners, like status bars, are notified through an
+	 * {@code imageContents} property change event, with a {@code null} old value.
+	 * @param region the modified region, in image pixel coordinates; it is clipped to the bounds of the image
+	 */
+	public void imageUpdated(Rectangle region) {
+		theImage.imageUpdated(region);
+	}
 	/**
 	 * Returns the currently displayed image.
-	 * @return the current image, or <code>null</code> if no image is displayed
+	 * @return the current image, or <code>null</code> if no image is displayed or the displayed image source is
+	 * not a {@link BufferedImageSource}
 	 */
 	public BufferedImage getImage() {
 		return theImage.getImage();
 	}
+	/**
+	 * Sets the image source displayed by the viewer. Unlike {@link #setImage(BufferedImage)}, this allows displaying
+	 * images which are not stored in memory in their entirety: the viewer only reads the regions of the source that
+	 * are visible, at a resolution appropriate for the current zoom.
+	 * <p>
+	 * If the source is a {@link BufferedImageSource}, the viewer behaves as if its image was set using
+	 * {@code setImage}. For other sources, {@link #getImage()} returns {@code null}.
+	 * @param source the new image source to display; if {@code null} then no image is displayed
+	 */
+	public void setImageSource(ImageSource source) {
+		theImage.setImageSource(source);
+	}
+	/**
+	 * Returns the currently displayed image source. When an image is set using {@link #setImage(BufferedImage)},
+	 * this method returns a {@link BufferedImageSource} wrapping it.
+	 * @return the current image source, or {@code null} if no image is displayed
+	 */
+	public ImageSource getImageSource() {
+		return theImage.getImageSource();
+	}
 	/**
 	 * Sets the resize strategy this viewer should use. The default is {@link ResizeStrategy#SHRINK_TO_FIT}.
 	 * @param resizeStrategy the new resize strategy
@@ -246,6 +283,120 @@ public final class ImageViewer {
 		return theImage.isPixelatedZoom();
 	}
 	
+	/**
+	 * Sets whether the shrunk image should be computed on a background thread. When this property is {@code true}
+	 * and the image needs to be shrunk, the viewer first quickly paints a nearest neighbor approximation of the
+	 * image, and replaces it with the version using the proper {@link #setInterpolationType(Object) interpolation type}
+	 * as soon as it is ready. This keeps the user interface responsive even for very large images.
+	 * The default is {@code false}.
+	 * @param backgroundRescaling the new value of the backgroundRescaling property
+	 */
+	public void setBackgroundRescaling(boolean backgroundRescaling) {
+		theImage.setBackgroundRescaling(backgroundRescaling);
+	}
+	/**
+	 * Returns whether the shrunk image is computed on a background thread. The default is {@code false}.
+	 * @return the current background rescaling setting
+	 * @see #setBackgroundRescaling(boolean)
+	 */
+	public boolean isBackgroundRescaling() {
+		return theImage.isBackgroundRescaling();
+	}
+	
+	/**
+	 * Sets whether image mouse motion events should be coalesced. When this property is {@code true}, the
+	 * {@code mouseMoved} and {@code mouseDragged} events of {@link ImageMouseMotionListener}s are delivered at most
+	 * once per display frame (about 60 times a second) with the latest position, regardless of how often the mouse
+	 * reports its position. The pixels that the mouse moved over since the previous event are available from
+	 * {@link ImageMouseEvent#getCoalescedX(int)} and {@link ImageMouseEvent#getCoalescedY(int)}. Pending motion is
+	 * always delivered before enter, exit and click events, and before mouse presses and releases reach the
+	 * {@link #addMouseListener(MouseListener) mouse listeners}, so the order of events is preserved.
+	 * <p>
+	 * In this mode the same event object is reused for every motion event, so listeners must not keep a reference
+	 * to it. The default is {@code false}.
+	 * @param coalescing the new value of the mouseMotionCoalescing property
+	 */
+	public void setMouseMotionCoalescing(boolean coalescing) {
+		theImage.setMouseMotionCoalescing(coalescing);
+	}
+	/**
+	 * Returns whether image mouse motion events are coalesced. The default is {@code false}.
+	 * @return the current coalescing setting
+	 * @see #setMouseMotionCoalescing(boolean)
+	 */
+	public boolean isMouseMotionCoalescing() {
+		return theImage.isMouseMotionCoalescing();
+	}
+	
+	/**
+	 * Sets the mapping used to display the samples of single-band images, for example to show a 16-bit image with
+	 * adjustable contrast. The mapping is applied only to the painted region, and the image is not modified, so
+	 * status bars still show the original sample values. Images with more than one band, and indexed images are not
+	 * affected. The default is {@code null}, which displays images as they are.
+	 * @param mapping the new display mapping, or {@code null}
+	 */
+	public void setDisplayMapping(DisplayMapping mapping) {
+		theImage.setDisplayMapping(mapping);
+	}
+	/**
+	 * Returns the mapping used to display the samples of single-band images.
+	 * @return the current display mapping, or {@code null} if images are displayed as they are
+	 * @see #setDisplayMapping(DisplayMapping)
+	 */
+	public DisplayMapping getDisplayMapping() {
+		return theImage.getDisplayMapping();
+	}
+
+	/**
+	 * Sets whether the viewer should paint from a copy of the image in the pixel format of the screen. Images in
+	 * other formats, like 3-byte BGR, 16-bit grey, indexed or custom images, are converted to the screen format every
+	 * time they are painted; with this property enabled, the conversion happens only once, in the background, when the
+	 * image is set or refreshed. Until the copy is ready, the image is painted as usual.
+	 * <p>
+	 * The copy takes as much memory as an integer RGB image of the same size. It is only used for painting:
+	 * {@link #getImage()}, image mouse events and status bars still refer to the original image. No copy is made if
+	 * the image is already in the screen format, and the copy is not painted while a {@link #setDisplayMapping display
+	 * mapping} is applied to the original samples. The default is {@code false}.
+	 * @param enabled the new value of the displayCopyEnabled property
+	 */
+	public void setDisplayCopyEnabled(boolean enabled) {
+		theImage.setDisplayCopyEnabled(enabled);
+	}
+	/**
+	 * Returns whether the viewer paints from a copy of the image in the pixel format of the screen. The default is
+	 * {@code false}.
+	 * @return the current display copy setting
+	 * @see #setDisplayCopyEnabled(boolean)
+	 */
+	public boolean isDisplayCopyEnabled() {
+		return theImage.isDisplayCopyEnabled();
+	}
+
+	/**
+	 * Sets whether paint statistics should be collected. Enabling metrics creates a new, empty
+	 * {@link PaintMetrics} object, which can be retrieved by {@link #getPaintMetrics()}. The default is {@code false}.
+	 * @param enabled the new value of the paintMetricsEnabled property
+	 */
+	public void setPaintMetricsEnabled(boolean enabled) {
+		theImage.setPaintMetricsEnabled(enabled);
+	}
+	/**
+	 * Returns whether paint statistics are collected. The default is {@code false}.
+	 * @return {@code true} if paint metrics are enabled
+	 * @see #setPaintMetricsEnabled(boolean)
+	 */
+	public boolean isPaintMetricsEnabled() {
+		return theImage.getPaintMetrics()!=null;
+	}
+	/**
+	 * Returns the paint statistics of this viewer.
+	 * @return the paint metrics, or {@code null} if metrics collection is disabled
+	 * @see #setPaintMetricsEnabled(boolean)
+	 */
+	public PaintMetrics getPaintMetrics() {
+		return theImage.getPaintMetrics();
+	}
+	
 	/**
 	 * Returns the current interpolation type. The default is {@link java.awt.RenderingHints#VALUE_INTERPOLATION_BICUBIC}.
 	 * @return the interpolation type
@@ -264,9 +415,11 @@ public final class ImageViewer {
 	 * <li>{@link java.awt.RenderingHints#VALUE_INTERPOLATION_NEAREST_NEIGHBOR}
 	 * <li>{@link java.awt.RenderingHints#VALUE_INTERPOLATION_BILINEAR}
 	 * <li>{@link java.awt.RenderingHints#VALUE_INTERPOLATION_BICUBIC} (default)
+	 * <li>the {@link ResamplingFilter} constants
 	 * </ul>
 	 * Changing the interpolation type to bilinear or nearest neighbor improves painting performance when the image
-	 * needs to be resized.
+	 * needs to be resized. The resampling filters give higher quality results when the image is shrunk, and they use
+	 * all processor cores to compute them.
 	 * <p>
 	 * Note: when the {@code pixelatedZoom} property is set to true and the image is enlarged, then the nearest
 	 * neighbor method is used regardless of this setting.
@@ -334,6 +487,29 @@ public final class ImageViewer {
 	public void removeOverlay(Overlay overlay) {
 		view.removeOverlay(overlay);
 	}
+	/**
+	 * Sets whether all the overlays above the image should be painted by a single component. By default each overlay
+	 * is a separate Swing component, which makes painting a large number of overlays slow. With compositing enabled,
+	 * the overlays are painted one after the other, in layer order, on the same graphics context; the state of the
+	 * context is restored after each overlay, so overlays can still modify it freely. Overlays whose
+	 * {@link Overlay#getPaintBounds paint bounds} are outside the repainted area are skipped. Overlays in layer 0 or
+	 * below are not affected. The default is {@code false}.
+	 * @param enabled the new value of the overlayCompositing property
+	 */
+	public void setOverlayCompositing(boolean enabled) {
+		boolean prev=isOverlayCompositing();
+		view.setOverlayCompositing(enabled);
+		propertyChangeSupport.firePropertyChange("overlayCompositing", prev, enabled);
+	}
+	/**
+	 * Returns whether all the overlays above the image are painted by a single component. The default is
+	 * {@code false}.
+	 * @return the current overlay compositing setting
+	 * @see #setOverlayCompositing(boolean)
+	 */
+	public boolean isOverlayCompositing() {
+		return view.isOverlayCompositing();
+	}
 	/**
 	 * Adds the specified mouse listener to receive mouse events from
 	 * the image component of this image viewer. If listener <code>l</code>
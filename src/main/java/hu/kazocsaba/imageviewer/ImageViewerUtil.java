@@ -38,6 +38,28 @@ public final class ImageViewerUtil {
 		}
 	}
 	
+	/**
+	 * Sets how the viewers synchronized with the specified viewer share their view. The views of the other viewers
+	 * are immediately adjusted to match this viewer. The default mode is {@link SynchronizationMode#SCROLL_POSITION}.
+	 * @param viewer a viewer of the synchronized group
+	 * @param mode the new synchronization mode
+	 * @throws NullPointerException if either argument is {@code null}
+	 * @see #synchronizeViewers(ImageViewer, ImageViewer[])
+	 */
+	public static void setSynchronizationMode(ImageViewer viewer, SynchronizationMode mode) {
+		viewer.getSynchronizer().setMode(mode, viewer);
+	}
+	
+	/**
+	 * Returns how the viewers synchronized with the specified viewer share their view.
+	 * @param viewer a viewer
+	 * @return the synchronization mode of the group of the viewer
+	 * @see #setSynchronizationMode(ImageViewer, SynchronizationMode)
+	 */
+	public static SynchronizationMode getSynchronizationMode(ImageViewer viewer) {
+		return viewer.getSynchronizer().getMode();
+	}
+	
 	/**
 	 * Synchronizes the {@link PixelInfoStatusBar}s associated with the viewers. Viewers with a different or {@code null}
 	 * status bar are ignored. When this function returns, the {@code PixelInfoStatusBar}s among the viewer status bars
@@ -1,10 +1,23 @@
 package hu.kazocsaba.imageviewer;
 
+import java.awt.Color;
 import java.awt.Component;
+import java.awt.Composite;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.LayoutManager;
+import java.awt.Paint;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.JComponent;
 import javax.swing.JLayeredPane;
 import javax.swing.JViewport;
@@ -17,6 +30,8 @@ import javax.swing.Scrollable;
 class LayeredImageView  {
 	private final ImageComponent theImage;
 	private final JLayeredPane layeredPane;
+	/* The component painting the overlays above the image if the overlays are composited, otherwise null. */
+	private CompositeOverlayComponent composite;
 	
 	public LayeredImageView(ImageComponent theImage) {
 		this.theImage = theImage;
@@ -41,7 +56,10 @@ class LayeredImageView  {
 		if (overlay==null) throw new NullPointerException();
 		OverlayComponent c=new OverlayComponent(overlay, theImage);
 		overlay.addOverlayComponent(c);
-		layeredPane.add(c, Integer.valueOf(layer));
+		if (composite!=null && layer>0)
+			composite.addOverlay(c, layer);
+		else
+			layeredPane.add(c, Integer.valueOf(layer));
 		layeredPane.revalidate();
 		layeredPane.repaint();
 	}
@@ -52,6 +70,14 @@ class LayeredImageView  {
 	 */
 	public void removeOverlay(Overlay overlay) {
 		if (overlay==null) throw new NullPointerException();
+		if (composite!=null) {
+			OverlayComponent c=composite.removeOverlay(overlay);
+			if (c!=null) {
+				overlay.removeOverlayComponent(c);
+				layeredPane.repaint();
+				return;
+			}
+		}
 		for (Component c: layeredPane.getComponents()) {
 			if (c instanceof OverlayComponent && ((OverlayComponent)c).overlay==overlay) {
 				overlay.removeOverlayComponent((OverlayComponent)c);
@@ -63,6 +89,123 @@ class LayeredImageView  {
 		}
 		throw new IllegalArgumentException("Overlay not part of this viewer");
 	}
+	/**
+	 * Sets whether the overlays above the image are painted by a single component. Otherwise each overlay has its own
+	 * component in the layered pane.
+	 * @param enabled whether the overlays should be composited
+	 */
+	public void setOverlayCompositing(boolean enabled) {
+		if (enabled==(composite!=null)) return;
+		if (enabled) {
+			composite=new CompositeOverlayComponent();
+			// the components of the layered pane are ordered from top to bottom, and each is added below the previous ones
+			Component[] components=layeredPane.getComponents();
+			for (int i=0; i<components.length; i++) {
+				if (components[i] instanceof OverlayComponent && layeredPane.getLayer(components[i])>0) {
+					int layer=layeredPane.getLayer(components[i]);
+					layeredPane.remove(components[i]);
+					composite.addOverlay((OverlayComponent)components[i], layer);
+				}
+			}
+			layeredPane.add(composite, Integer.valueOf(1));
+		} else {
+			layeredPane.remove(composite);
+			for (int i=composite.overlays.size()-1; i>=0; i--) {
+				OverlayComponent c=composite.overlays.get(i);
+				c.setHost(null);
+				layeredPane.add(c, Integer.valueOf(composite.layers.get(i)));
+			}
+			composite=null;
+		}
+		layeredPane.revalidate();
+		layeredPane.repaint();
+	}
+	/**
+	 * Returns whether the overlays above the image are painted by a single component.
+	 * @return {@code true} if the overlays are composited
+	 */
+	public boolean isOverlayCompositing() {
+		return composite!=null;
+	}
+	/**
+	 * Paints all the overlays above the image in layer order, with a single graphics context. The overlay components
+	 * are not part of the component hierarchy; they are only used for painting the overlays and forwarding their
+	 * repaint requests.
+	 */
+	private class CompositeOverlayComponent extends JComponent {
+		/* The overlays in the order they are painted, and their layers. */
+		final List<OverlayComponent> overlays=new ArrayList<OverlayComponent>();
+		final List<Integer> layers=new ArrayList<Integer>();
+
+		/**
+		 * Adds an overlay below the other overlays in the same layer, like JLayeredPane does.
+		 */
+		void addOverlay(OverlayComponent c, int layer) {
+			int index=0;
+			while (index<layers.size() && layers.get(index)<layer) index++;
+			overlays.add(index, c);
+			layers.add(index, layer);
+			c.setHost(this);
+			c.setBounds(getBounds());
+		}
+
+		/**
+		 * Removes an overlay and returns its component, or returns null if the overlay is not painted here.
+		 */
+		OverlayComponent removeOverlay(Overlay overlay) {
+			for (int i=0; i<overlays.size(); i++) {
+				if (overlays.get(i).overlay==overlay) {
+					layers.remove(i);
+					return overlays.remove(i);
+				}
+			}
+			return null;
+		}
+
+		void layoutOverlays() {
+			for (OverlayComponent c: overlays)
+				c.setBounds(getBounds());
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			if (theImage.getImageSource()==null || overlays.isEmpty()) return;
+			Graphics2D gg=(Graphics2D)g.create();
+			Rectangle clip=new Rectangle(0, 0, getWidth(), getHeight());
+			if (gg.getClipBounds()!=null) clip=clip.intersection(gg.getClipBounds());
+			BufferedImage image=theImage.getImage();
+			AffineTransform transform=theImage.getImageTransform();
+
+			// overlays may modify the graphics context, so its state is restored after each one that was painted
+			AffineTransform graphicsTransform=gg.getTransform();
+			Shape graphicsClip=gg.getClip();
+			Color color=gg.getColor(), background=gg.getBackground();
+			Paint paint=gg.getPaint();
+			Stroke stroke=gg.getStroke();
+			Composite graphicsComposite=gg.getComposite();
+			Font font=gg.getFont();
+			RenderingHints hints=gg.getRenderingHints();
+			for (OverlayComponent c: overlays) {
+				if (c.paintOverlay(gg, clip, image, transform)) {
+					gg.setTransform(graphicsTransform);
+					gg.setClip(graphicsClip);
+					gg.setColor(color);
+					gg.setPaint(paint);
+					gg.setBackground(background);
+					gg.setStroke(stroke);
+					gg.setComposite(graphicsComposite);
+					gg.setFont(font);
+					gg.setRenderingHints(hints);
+				}
+			}
+			gg.dispose();
+		}
+
+		@Override
+		public Dimension getMaximumSize() {
+			return new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		}
+	}
 	/**
 	 * This layout manager ensures that the ImageComponent and all the overlays fill the container exactly.
 	 */
@@ -89,6 +232,7 @@ class LayeredImageView  {
 			for (int i=0; i<parent.getComponentCount(); i++) {
 				parent.getComponent(i).setBounds(0, 0, parent.getWidth(), parent.getHeight());
 			}
+			if (composite!=null) composite.layoutOverlays();
 		}
 		
 	}
@@ -0,0 +1,141 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Displays frames produced by other threads, like a camera, in an image viewer. Frames can be submitted from any
+ * thread at any rate without blocking: the feed keeps only the latest frame, and updates the viewer with it on the
+ * event dispatch thread at most once per display frame (about 60 times a second by default). Frames that are replaced
+ * by a newer one before they could be displayed are dropped. This way the frame rate of the source does not affect
+ * the responsiveness of the user interface, and no queue of pending frames can build up.
+ * <p>
+ * A submitted frame is shown with {@link ImageViewer#setImage(BufferedImage)}, so it must not be modified by the
+ * producer afterwards, except for a frame that is submitted repeatedly to display its updated contents.
+ * <p>
+ * The numbers of produced, displayed and dropped frames are counted. Every produced frame is eventually either
+ * displayed or dropped, except for the one that is waiting to be displayed.
+ * @author Kazó Csaba
+ */
+public class LiveImageFeed {
+	private final ImageViewer viewer;
+	/* The latest frame that has not been displayed yet, or null. */
+	private final AtomicReference<BufferedImage> pendingFrame=new AtomicReference<BufferedImage>();
+	/* True if an update of the viewer has been scheduled on the event dispatch thread. */
+	private final AtomicBoolean updateScheduled=new AtomicBoolean(false);
+	private final AtomicLong producedFrames=new AtomicLong(), displayedFrames=new AtomicLong(), droppedFrames=new AtomicLong();
+	/* Accessed only on the event dispatch thread. */
+	private long lastUpdate;
+	private volatile int minimumInterval=16;
+	private final Timer delayTimer;
+
+	private final Runnable update=new Runnable() {
+
+		@Override
+		public void run() {
+			long wait=lastUpdate+minimumInterval-System.currentTimeMillis();
+			if (wait>0 && wait<=minimumInterval) {
+				// the viewer has been updated in this display frame already
+				delayTimer.setInitialDelay((int)wait);
+				delayTimer.restart();
+				return;
+			}
+			// clear the flag first, so that a frame submitted from now on schedules a new update
+			updateScheduled.set(false);
+			BufferedImage frame=pendingFrame.getAndSet(null);
+			if (frame==null) return;
+			lastUpdate=System.currentTimeMillis();
+			viewer.setImage(frame);
+			displayedFrames.incrementAndGet();
+		}
+	};
+
+	/**
+	 * Creates a new feed for an image viewer.
+	 * @param viewer the viewer displaying the frames
+	 * @throws NullPointerException if {@code viewer} is {@code null}
+	 */
+	public LiveImageFeed(ImageViewer viewer) {
+		if (viewer==null) throw new NullPointerException();
+		this.viewer=viewer;
+		delayTimer=new Timer(0, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				update.run();
+			}
+		});
+		delayTimer.setRepeats(false);
+	}
+
+	/**
+	 * Returns the viewer displaying the frames.
+	 * @return the viewer of this feed
+	 */
+	public ImageViewer getImageViewer() {
+		return viewer;
+	}
+
+	/**
+	 * Submits a new frame to be displayed. This method can be called from any thread, and it returns immediately. If
+	 * the previously submitted frame has not been displayed yet, it is dropped.
+	 * @param frame the new frame
+	 * @throws NullPointerException if {@code frame} is {@code null}
+	 */
+	public void submit(BufferedImage frame) {
+		if (frame==null) throw new NullPointerException();
+		producedFrames.incrementAndGet();
+		if (pendingFrame.getAndSet(frame)!=null)
+			droppedFrames.incrementAndGet();
+		if (updateScheduled.compareAndSet(false, true))
+			SwingUtilities.invokeLater(update);
+	}
+
+	/**
+	 * Sets the maximum number of times the viewer is updated per second. The default is 60.
+	 * @param fps the maximum update rate
+	 * @throws IllegalArgumentException if {@code fps} is not positive
+	 */
+	public void setMaximumFrameRate(double fps) {
+		if (!(fps>0)) throw new IllegalArgumentException("Frame rate must be positive");
+		minimumInterval=(int)Math.min(Integer.MAX_VALUE, Math.round(1000/fps));
+	}
+
+	/**
+	 * Returns the maximum number of times the viewer is updated per second.
+	 * @return the maximum update rate
+	 */
+	public double getMaximumFrameRate() {
+		return minimumInterval==0 ? Double.POSITIVE_INFINITY : 1000./minimumInterval;
+	}
+
+	/**
+	 * Returns the number of frames submitted to this feed.
+	 * @return the number of produced frames
+	 */
+	public long getProducedFrameCount() {
+		return producedFrames.get();
+	}
+
+	/**
+	 * Returns the number of frames that were displayed by the viewer.
+	 * @return the number of displayed frames
+	 */
+	public long getDisplayedFrameCount() {
+		return displayedFrames.get();
+	}
+
+	/**
+	 * Returns the number of frames that were replaced by a newer frame before they could be displayed.
+	 * @return the number of dropped frames
+	 */
+	public long getDroppedFrameCount() {
+		return droppedFrames.get();
+	}
+}
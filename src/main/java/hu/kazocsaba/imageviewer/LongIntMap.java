@@ -0,0 +1,155 @@
+package hu.kazocsaba.imageviewer;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from {@code long} keys to non-zero {@code int} values, using open addressing with linear probing. A value
+ * of zero denotes a missing key, so zero cannot be stored in the map.
+ * <p>
+ * The entries can be iterated by going through the slots from 0 to {@link #capacity()}-1 and skipping those where
+ * {@link #valueAt(int)} is zero.
+ * @author Kazó Csaba
+ */
+class LongIntMap {
+	private static final int MINIMUM_CAPACITY=16;
+
+	private long[] keys;
+	private int[] values;
+	private int size=0;
+
+	public LongIntMap() {
+		keys=new long[MINIMUM_CAPACITY];
+		values=new int[MINIMUM_CAPACITY];
+	}
+
+	private int slot(long key) {
+		return (int)((key*0x9E3779B97F4A7C15L)>>>(64-Integer.numberOfTrailingZeros(keys.length)));
+	}
+
+	private int find(long key) {
+		int mask=keys.length-1;
+		int slot=slot(key);
+		while (values[slot]!=0 && keys[slot]!=key)
+			slot=(slot+1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Returns the value associated with the key.
+	 * @return the value associated with the key, or 0 if the key is not in the map
+	 */
+	public int get(long key) {
+		return values[find(key)];
+	}
+
+	/**
+	 * Associates a value with the key. Setting the value to zero removes the key.
+	 * @return the previous value associated with the key, or 0 if there was none
+	 */
+	public int put(long key, int value) {
+		if (value==0) return remove(key);
+		int slot=find(key);
+		int old=values[slot];
+		keys[slot]=key;
+		values[slot]=value;
+		if (old==0) {
+			size++;
+			if (size*4>keys.length*3) rehash(keys.length*2);
+		}
+		return old;
+	}
+
+	/**
+	 * Adds a number to the value associated with the key, removing the key if the result is zero.
+	 * @return the new value associated with the key
+	 */
+	public int add(long key, int delta) {
+		int slot=find(key);
+		int value=values[slot]+delta;
+		if (value==0) {
+			if (values[slot]!=0) removeSlot(slot);
+		} else {
+			boolean added=values[slot]==0;
+			keys[slot]=key;
+			values[slot]=value;
+			if (added) {
+				size++;
+				if (size*4>keys.length*3) rehash(keys.length*2);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Removes the key from the map.
+	 * @return the value that was associated with the key, or 0 if the key was not in the map
+	 */
+	public int remove(long key) {
+		int slot=find(key);
+		int old=values[slot];
+		if (old!=0) removeSlot(slot);
+		return old;
+	}
+
+	private void removeSlot(int slot) {
+		/* shift back the following entries of the probe sequence so that no gap remains in it */
+		int mask=keys.length-1;
+		int gap=slot;
+		int next=(gap+1) & mask;
+		while (values[next]!=0) {
+			int home=slot(keys[next]);
+			/* the entry can be moved into the gap if its home slot is not cyclically between the gap and itself */
+			if (((next-home) & mask)>=((next-gap) & mask)) {
+				keys[gap]=keys[next];
+				values[gap]=values[next];
+				gap=next;
+			}
+			next=(next+1) & mask;
+		}
+		values[gap]=0;
+		size--;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys=keys;
+		int[] oldValues=values;
+		keys=new long[capacity];
+		values=new int[capacity];
+		for (int i=0; i<oldKeys.length; i++)
+			if (oldValues[i]!=0) {
+				int slot=find(oldKeys[i]);
+				keys[slot]=oldKeys[i];
+				values[slot]=oldValues[i];
+			}
+	}
+
+	/** Returns the number of keys in the map. */
+	public int size() {
+		return size;
+	}
+
+	/** Removes all keys from the map. */
+	public void clear() {
+		if (keys.length>MINIMUM_CAPACITY) {
+			keys=new long[MINIMUM_CAPACITY];
+			values=new int[MINIMUM_CAPACITY];
+		} else
+			Arrays.fill(values, 0);
+		size=0;
+	}
+
+	/** Returns the number of slots in the map. */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/** Returns the key stored in a slot. The result is meaningless if the slot is empty. */
+	public long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	/** Returns the value stored in a slot, or 0 if the slot is empty. */
+	public int valueAt(int slot) {
+		return values[slot];
+	}
+}
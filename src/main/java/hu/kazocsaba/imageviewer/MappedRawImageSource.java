@@ -0,0 +1,148 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An image source reading raw grayscale pixels from a memory-mapped file. The file is never loaded into the Java heap:
+ * only the pixels of the regions requested by the viewer are copied, so opening even a multi-gigabyte file is
+ * almost instantaneous.
+ * <p>
+ * The layout of the pixel data is described by the constructor parameters. The rows of the image follow each other
+ * starting at the specified offset in the file (which can be used to skip a header), with {@code rowStride} bytes
+ * between the starts of consecutive rows. Each sample takes one byte if the bit depth is 8, and two bytes in the
+ * specified byte order if the bit depth is 16.
+ * <p>
+ * Regions read at a reduced resolution use the top left pixel of each block.
+ * @author Kazó Csaba
+ */
+public final class MappedRawImageSource implements ImageSource {
+	private final int width, height;
+	private final int bytesPerSample;
+	private final long rowStride;
+	private final int rowsPerChunk;
+	/*
+	 * A single mapping cannot be larger than 2 GB, so the file is mapped in chunks containing whole rows. The buffers
+	 * are only accessed with absolute get methods or through duplicates, so concurrent reads are safe.
+	 */
+	private final MappedByteBuffer[] chunks;
+	private final ColorModel colorModel;
+
+	/**
+	 * Creates a new image source for a raw pixel file.
+	 * @param file the file containing the pixels
+	 * @param offset the position of the first pixel in the file, in bytes
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param rowStride the number of bytes between the starts of consecutive rows; it cannot be smaller than the size
+	 * of a row
+	 * @param bitsPerSample the bit depth of the samples, either 8 or 16
+	 * @param byteOrder the byte order of 16-bit samples
+	 * @throws IllegalArgumentException if the parameters are invalid or the file is too short for the described image
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public MappedRawImageSource(File file, long offset, int width, int height, long rowStride, int bitsPerSample, ByteOrder byteOrder) throws IOException {
+		if (width<=0 || height<=0) throw new IllegalArgumentException("Invalid image size: "+width+"x"+height);
+		if (bitsPerSample!=8 && bitsPerSample!=16) throw new IllegalArgumentException("Unsupported bit depth: "+bitsPerSample);
+		if (byteOrder==null) throw new NullPointerException();
+		bytesPerSample=bitsPerSample/8;
+		if (offset<0) throw new IllegalArgumentException("Negative offset");
+		if (rowStride<(long)width*bytesPerSample) throw new IllegalArgumentException("Row stride smaller than row size");
+		if (rowStride>Integer.MAX_VALUE) throw new IllegalArgumentException("Row stride too large");
+		this.width=width;
+		this.height=height;
+		this.rowStride=rowStride;
+		long rowSize=(long)width*bytesPerSample;
+
+		rowsPerChunk=(int)Math.min(height, Math.max(1, (Integer.MAX_VALUE-rowSize)/rowStride+1));
+		chunks=new MappedByteBuffer[(height+rowsPerChunk-1)/rowsPerChunk];
+		RandomAccessFile raf=new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel=raf.getChannel();
+			long requiredLength=offset+(height-1)*rowStride+rowSize;
+			if (channel.size()<requiredLength)
+				throw new IllegalArgumentException("File too short: "+channel.size()+" bytes, "+requiredLength+" bytes required");
+			for (int i=0; i<chunks.length; i++) {
+				int rows=Math.min(rowsPerChunk, height-i*rowsPerChunk);
+				chunks[i]=channel.map(FileChannel.MapMode.READ_ONLY, offset+i*rowsPerChunk*rowStride, (rows-1)*rowStride+rowSize);
+				chunks[i].order(byteOrder);
+			}
+		} finally {
+			// the mappings remain valid after the channel is closed
+			raf.close();
+		}
+		colorModel=new BufferedImage(1, 1, bitsPerSample==8 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_USHORT_GRAY).getColorModel();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the colour model of the image. The images returned by {@link #readRegion(int, int, int, int, int)} are
+	 * of type {@code TYPE_BYTE_GRAY} or {@code TYPE_USHORT_GRAY}, depending on the bit depth.
+	 * @return the colour model of the image
+	 */
+	@Override
+	public ColorModel getColorModel() {
+		return colorModel;
+	}
+
+	@Override
+	public BufferedImage readRegion(int x, int y, int width, int height, int subsample) {
+		if (subsample<1) throw new IllegalArgumentException("Invalid subsample: "+subsample);
+		if (x<0 || y<0 || width<=0 || height<=0 || x+width>this.width || y+height>this.height)
+			throw new IllegalArgumentException("Region outside image bounds");
+		int targetWidth=(width+subsample-1)/subsample, targetHeight=(height+subsample-1)/subsample;
+		BufferedImage target=new BufferedImage(targetWidth, targetHeight,
+				bytesPerSample==1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_USHORT_GRAY);
+
+		if (bytesPerSample==1) {
+			byte[] data=((DataBufferByte)target.getRaster().getDataBuffer()).getData();
+			for (int j=0; j<targetHeight; j++) {
+				int row=y+j*subsample;
+				MappedByteBuffer chunk=chunks[row/rowsPerChunk];
+				int rowStart=(int)((row%rowsPerChunk)*rowStride)+x;
+				if (subsample==1) {
+					ByteBuffer buffer=chunk.duplicate();
+					buffer.position(rowStart);
+					buffer.get(data, j*targetWidth, targetWidth);
+				} else {
+					for (int i=0; i<targetWidth; i++)
+						data[j*targetWidth+i]=chunk.get(rowStart+i*subsample);
+				}
+			}
+		} else {
+			short[] data=((DataBufferUShort)target.getRaster().getDataBuffer()).getData();
+			for (int j=0; j<targetHeight; j++) {
+				int row=y+j*subsample;
+				MappedByteBuffer chunk=chunks[row/rowsPerChunk];
+				int rowStart=(int)((row%rowsPerChunk)*rowStride)+2*x;
+				if (subsample==1) {
+					ByteBuffer buffer=chunk.duplicate().order(chunk.order());
+					buffer.position(rowStart);
+					buffer.asShortBuffer().get(data, j*targetWidth, targetWidth);
+				} else {
+					for (int i=0; i<targetWidth; i++)
+						data[j*targetWidth+i]=chunk.getShort(rowStart+2*i*subsample);
+				}
+			}
+		}
+		return target;
+	}
+}
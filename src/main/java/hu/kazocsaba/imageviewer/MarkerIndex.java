@@ -0,0 +1,280 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * A spatial index of pixel positions, used by {@link PixelMarkerOverlay}. The points are stored in a grid of square
+ * cells, so the points inside a rectangle can be found without looking at the others.
+ * <p>
+ * The index also maintains the number of points in coarser grids: the cells of level {@code k} are
+ * {@code CELL_SIZE<<k} pixels wide. These counts allow painting a summary of the points when a lot of them would fall
+ * on a single screen pixel.
+ * <p>
+ * No objects are allocated for the individual points: a sparse cell stores two bytes per point, and a dense cell
+ * stores a bitmap of one bit per pixel.
+ * @author Kazó Csaba
+ */
+class MarkerIndex {
+	/** The base 2 logarithm of the cell size. */
+	static final int CELL_SHIFT=5;
+	/** The width and height of a cell at level 0, in pixels. */
+	static final int CELL_SIZE=1<<CELL_SHIFT;
+	/** The number of levels; the cells at the last level are about two million pixels wide. */
+	static final int LEVELS=17;
+
+	/**
+	 * Receives the contents of the index.
+	 */
+	interface Visitor {
+		/**
+		 * Called for a point.
+		 * @param x the x coordinate of the point
+		 * @param y the y coordinate of the point
+		 */
+		public void point(int x, int y);
+		/**
+		 * Called for a non-empty cell.
+		 * @param cellX the x index of the cell; the cell starts at pixel {@code cellX*cellSize}
+		 * @param cellY the y index of the cell; the cell starts at pixel {@code cellY*cellSize}
+		 * @param cellSize the size of the cell in pixels
+		 * @param count the number of points in the cell
+		 */
+		public void cell(int cellX, int cellY, int cellSize, int count);
+	}
+
+	/* cells holding more points than this store them in a bitmap instead of a list */
+	private static final int LIST_LIMIT=64;
+	private static final int CELL_MASK=CELL_SIZE-1;
+
+	/*
+	 * The occupied cells are stored in slots of parallel arrays; cellSlots maps the cell keys to slot+1. The points of
+	 * a cell are represented by their offset inside the cell, (x%CELL_SIZE)*CELL_SIZE+(y%CELL_SIZE), either in an
+	 * unordered list or, for dense cells, in a bitmap of CELL_SIZE*CELL_SIZE bits.
+	 */
+	private final LongIntMap cellSlots=new LongIntMap();
+	private long[] cellKeys;
+	private int[] cellSizes;
+	private short[][] cellLists;
+	private long[][] cellBitmaps;
+	private int slotCount;
+	private int[] freeSlots;
+	private int freeSlotCount;
+
+	/* counts[k] stores the number of points in the cells of level k+1 */
+	private final LongIntMap[] counts=new LongIntMap[LEVELS-1];
+	private int size;
+
+	public MarkerIndex() {
+		for (int level=1; level<LEVELS; level++)
+			counts[level-1]=new LongIntMap();
+		clear();
+	}
+
+	private static long key(int cellX, int cellY) {
+		return ((long)cellX<<32) | (cellY & 0xffffffffL);
+	}
+
+	/**
+	 * Adds a point to the index.
+	 * @return {@code true} if the point was not in the index before
+	 */
+	public boolean add(int x, int y) {
+		long key=key(x>>CELL_SHIFT, y>>CELL_SHIFT);
+		int offset=((x & CELL_MASK)<<CELL_SHIFT) | (y & CELL_MASK);
+		int slot=cellSlots.get(key)-1;
+		if (slot<0) slot=allocateCell(key);
+		if (cellBitmaps[slot]!=null) {
+			long[] bitmap=cellBitmaps[slot];
+			if ((bitmap[offset>>6] & (1L<<offset))!=0) return false;
+			bitmap[offset>>6]|=1L<<offset;
+		} else {
+			short[] list=cellLists[slot];
+			int cellSize=cellSizes[slot];
+			for (int i=0; i<cellSize; i++)
+				if (list[i]==offset) return false;
+			if (cellSize==LIST_LIMIT) {
+				long[] bitmap=new long[CELL_SIZE*CELL_SIZE/64];
+				for (int i=0; i<cellSize; i++)
+					bitmap[list[i]>>6]|=1L<<list[i];
+				bitmap[offset>>6]|=1L<<offset;
+				cellBitmaps[slot]=bitmap;
+				cellLists[slot]=null;
+			} else {
+				if (cellSize==list.length) cellLists[slot]=list=Arrays.copyOf(list, 2*cellSize);
+				list[cellSize]=(short)offset;
+			}
+		}
+		cellSizes[slot]++;
+		size++;
+		updateCounts(x, y, 1);
+		return true;
+	}
+
+	/**
+	 * Removes a point from the index.
+	 * @return {@code true} if the point was in the index
+	 */
+	public boolean remove(int x, int y) {
+		long key=key(x>>CELL_SHIFT, y>>CELL_SHIFT);
+		int offset=((x & CELL_MASK)<<CELL_SHIFT) | (y & CELL_MASK);
+		int slot=cellSlots.get(key)-1;
+		if (slot<0) return false;
+		if (cellBitmaps[slot]!=null) {
+			long[] bitmap=cellBitmaps[slot];
+			if ((bitmap[offset>>6] & (1L<<offset))==0) return false;
+			bitmap[offset>>6]&=~(1L<<offset);
+		} else {
+			short[] list=cellLists[slot];
+			int cellSize=cellSizes[slot];
+			int index=0;
+			while (index<cellSize && list[index]!=offset) index++;
+			if (index==cellSize) return false;
+			list[index]=list[cellSize-1];
+		}
+		if (--cellSizes[slot]==0) freeCell(slot);
+		size--;
+		updateCounts(x, y, -1);
+		return true;
+	}
+
+	private int allocateCell(long key) {
+		int slot;
+		if (freeSlotCount>0)
+			slot=freeSlots[--freeSlotCount];
+		else {
+			if (slotCount==cellKeys.length) {
+				int capacity=2*slotCount;
+				cellKeys=Arrays.copyOf(cellKeys, capacity);
+				cellSizes=Arrays.copyOf(cellSizes, capacity);
+				cellLists=Arrays.copyOf(cellLists, capacity);
+				cellBitmaps=Arrays.copyOf(cellBitmaps, capacity);
+			}
+			slot=slotCount++;
+		}
+		cellKeys[slot]=key;
+		cellSizes[slot]=0;
+		cellLists[slot]=new short[4];
+		cellBitmaps[slot]=null;
+		cellSlots.put(key, slot+1);
+		return slot;
+	}
+
+	private void freeCell(int slot) {
+		cellSlots.remove(cellKeys[slot]);
+		cellLists[slot]=null;
+		cellBitmaps[slot]=null;
+		if (freeSlotCount==freeSlots.length) freeSlots=Arrays.copyOf(freeSlots, 2*freeSlotCount);
+		freeSlots[freeSlotCount++]=slot;
+	}
+
+	private void updateCounts(int x, int y, int delta) {
+		for (int level=1; level<LEVELS; level++) {
+			int shift=CELL_SHIFT+level;
+			counts[level-1].add(key(x>>shift, y>>shift), delta);
+		}
+	}
+
+	/** Removes all points. */
+	public void clear() {
+		cellSlots.clear();
+		cellKeys=new long[16];
+		cellSizes=new int[16];
+		cellLists=new short[16][];
+		cellBitmaps=new long[16][];
+		slotCount=0;
+		freeSlots=new int[16];
+		freeSlotCount=0;
+		for (LongIntMap levelCounts: counts)
+			levelCounts.clear();
+		size=0;
+	}
+
+	/** Returns the number of points in the index. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Visits the points in the cells intersecting the specified region. Some points outside the region may also be
+	 * visited.
+	 * @param region the region in pixel coordinates
+	 * @param visitor the visitor whose {@code point} method is called
+	 */
+	public void visitPoints(Rectangle region, Visitor visitor) {
+		int minX=region.x>>CELL_SHIFT, maxX=(region.x+region.width-1)>>CELL_SHIFT;
+		int minY=region.y>>CELL_SHIFT, maxY=(region.y+region.height-1)>>CELL_SHIFT;
+		if ((long)(maxX-minX+1)*(maxY-minY+1)<=cellSlots.size()) {
+			for (int cellY=minY; cellY<=maxY; cellY++)
+				for (int cellX=minX; cellX<=maxX; cellX++) {
+					int slot=cellSlots.get(key(cellX, cellY))-1;
+					if (slot>=0) visitPoints(slot, visitor);
+				}
+		} else {
+			// there are fewer occupied cells than cells in the region
+			for (int slot=0; slot<slotCount; slot++) {
+				if (cellSizes[slot]==0) continue;
+				int cellX=(int)(cellKeys[slot]>>32), cellY=(int)cellKeys[slot];
+				if (cellX>=minX && cellX<=maxX && cellY>=minY && cellY<=maxY)
+					visitPoints(slot, visitor);
+			}
+		}
+	}
+
+	private void visitPoints(int slot, Visitor visitor) {
+		int originX=(int)(cellKeys[slot]>>32)<<CELL_SHIFT, originY=(int)cellKeys[slot]<<CELL_SHIFT;
+		if (cellBitmaps[slot]!=null) {
+			long[] bitmap=cellBitmaps[slot];
+			for (int i=0; i<bitmap.length; i++) {
+				long bits=bitmap[i];
+				while (bits!=0) {
+					int offset=i*64+Long.numberOfTrailingZeros(bits);
+					visitor.point(originX+(offset>>CELL_SHIFT), originY+(offset & CELL_MASK));
+					bits&=bits-1;
+				}
+			}
+		} else {
+			short[] list=cellLists[slot];
+			for (int i=0; i<cellSizes[slot]; i++)
+				visitor.point(originX+(list[i]>>CELL_SHIFT), originY+(list[i] & CELL_MASK));
+		}
+	}
+
+	/**
+	 * Visits the non-empty cells of the specified level which intersect the region.
+	 * @param region the region in pixel coordinates
+	 * @param level the level of the cells, between 0 and {@code LEVELS-1}
+	 * @param visitor the visitor whose {@code cell} method is called
+	 */
+	public void visitCells(Rectangle region, int level, Visitor visitor) {
+		int shift=CELL_SHIFT+level;
+		int minX=region.x>>shift, maxX=(region.x+region.width-1)>>shift;
+		int minY=region.y>>shift, maxY=(region.y+region.height-1)>>shift;
+		if (level==0) {
+			for (int slot=0; slot<slotCount; slot++) {
+				if (cellSizes[slot]==0) continue;
+				int cellX=(int)(cellKeys[slot]>>32), cellY=(int)cellKeys[slot];
+				if (cellX>=minX && cellX<=maxX && cellY>=minY && cellY<=maxY)
+					visitor.cell(cellX, cellY, 1<<shift, cellSizes[slot]);
+			}
+			return;
+		}
+		LongIntMap levelCounts=counts[level-1];
+		if ((long)(maxX-minX+1)*(maxY-minY+1)<=levelCounts.size()) {
+			for (int cellY=minY; cellY<=maxY; cellY++)
+				for (int cellX=minX; cellX<=maxX; cellX++) {
+					int count=levelCounts.get(key(cellX, cellY));
+					if (count!=0) visitor.cell(cellX, cellY, 1<<shift, count);
+				}
+		} else {
+			for (int i=0; i<levelCounts.capacity(); i++) {
+				int count=levelCounts.valueAt(i);
+				if (count==0) continue;
+				long key=levelCounts.keyAt(i);
+				int cellX=(int)(key>>32), cellY=(int)key;
+				if (cellX>=minX && cellX<=maxX && cellY>=minY && cellY<=maxY)
+					visitor.cell(cellX, cellY, 1<<shift, count);
+			}
+		}
+	}
+}
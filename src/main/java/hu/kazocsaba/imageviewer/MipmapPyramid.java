@@ -0,0 +1,212 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of successively halved versions of an image. Level 0 is the image itself, and each further level is
+ * produced by averaging 2x2 blocks of the previous one. Levels are computed lazily, when first requested.
+ * <p>
+ * The levels have the same colour model and sample layout as the original image, so the stored values are
+ * averages of the original samples and not of their displayed colours.
+ * <p>
+ * This class is thread safe, so levels can also be computed by background rendering threads. A level is computed
+ * without holding the lock of the pyramid, so that a long computation does not block the other methods.
+ * @author Kazó Csaba
+ */
+class MipmapPyramid {
+	private final BufferedImage image;
+	/* The computed levels, guarded by the lock of the pyramid. */
+	private final List<BufferedImage> levels=new ArrayList<BufferedImage>(8);
+	private volatile long cachedBytes=0;
+	/* The number of levels being computed, and the region of the image updated since the first of them started. */
+	private int builders=0;
+	private Rectangle updatedWhileBuilding=null;
+
+	/**
+	 * Creates a new pyramid for the specified image.
+	 * @param image the image at level 0
+	 */
+	public MipmapPyramid(BufferedImage image) {
+		this.image=image;
+		levels.add(image);
+	}
+
+	/**
+	 * Returns the image at level 0.
+	 * @return the original image
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * Returns whether a pyramid can be built for the image. Averaging is meaningless for indexed images, so those are
+	 * not supported.
+	 * @param image the image to test
+	 * @return {@code true} if {@code image} can be used to construct a pyramid
+	 */
+	public static boolean isSupported(BufferedImage image) {
+		return !(image.getColorModel() instanceof IndexColorModel);
+	}
+
+	/**
+	 * Returns the level that should be used to paint the image at the specified scale. This is the smallest level
+	 * that is still at least as large as the scaled image.
+	 * @param scale the scale at which the original image is painted
+	 * @return the index of the appropriate level
+	 */
+	public int levelFor(double scale) {
+		if (scale>=1) return 0;
+		int level=0;
+		int width=image.getWidth(), height=image.getHeight();
+		while (scale*2<=1 && (width>1 || height>1)) {
+			scale*=2;
+			width=(width+1)/2;
+			height=(height+1)/2;
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Returns the specified level, computing it and all the missing levels before it if necessary.
+	 * @param level the index of the level; 0 is the original image
+	 * @return the image at the specified level
+	 */
+	public BufferedImage getLevel(int level) {
+		if (level<0) throw new IllegalArgumentException("Negative level");
+		while (true) {
+			BufferedImage source;
+			int index;
+			synchronized (this) {
+				if (level<levels.size()) return levels.get(level);
+				index=levels.size();
+				source=levels.get(index-1);
+				builders++;
+			}
+			BufferedImage halved=halve(source);
+			synchronized (this) {
+				builders--;
+				if (levels.size()==index) {
+					levels.add(halved);
+					cachedBytes+=FrameCache.sizeOf(halved);
+					// the source may have changed while it was read
+					if (updatedWhileBuilding!=null) updateLevels(updatedWhileBuilding, index, index);
+				}
+				if (builders==0) updatedWhileBuilding=null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the memory used by the levels that have been computed, not counting the original image. This method
+	 * does not block.
+	 * @return the total size of the computed levels in bytes
+	 */
+	public long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/**
+	 * Creates an image with half the width and height of the argument. Odd dimensions are rounded up, and the pixels
+	 * along the last row and column are averaged only from the existing source pixels.
+	 */
+	private static BufferedImage halve(BufferedImage source) {
+		int width=(source.getWidth()+1)/2, height=(source.getHeight()+1)/2;
+		ColorModel cm=source.getColorModel();
+		WritableRaster targetRaster=source.getRaster().createCompatibleWritableRaster(width, height);
+		BufferedImage target=new BufferedImage(cm, targetRaster, cm.isAlphaPremultiplied(), null);
+		halve(source.getRaster(), targetRaster, 0, 0, width, height);
+		return target;
+	}
+
+	/**
+	 * Recomputes the parts of the computed levels that depend on a region of the original image. This must be called
+	 * when the contents of the image have changed.
+	 * @param region the changed region of the image
+	 */
+	public synchronized void update(Rectangle region) {
+		updateLevels(region, 1, levels.size()-1);
+		if (builders>0)
+			updatedWhileBuilding=updatedWhileBuilding==null ? new Rectangle(region) : updatedWhileBuilding.union(region);
+	}
+
+	/**
+	 * Recomputes the parts of the levels from {@code first} to {@code last} that depend on a region of the original
+	 * image. Must be called with the lock held.
+	 */
+	private void updateLevels(Rectangle region, int first, int last) {
+		int x0=Math.max(0, region.x), y0=Math.max(0, region.y);
+		int x1=Math.min(image.getWidth(), region.x+region.width), y1=Math.min(image.getHeight(), region.y+region.height);
+		for (int level=1; level<=last && x0<x1 && y0<y1; level++) {
+			x0/=2;
+			y0/=2;
+			x1=(x1+1)/2;
+			y1=(y1+1)/2;
+			if (level>=first)
+				halve(levels.get(level-1).getRaster(), levels.get(level).getRaster(), x0, y0, x1, y1);
+		}
+	}
+
+	/**
+	 * Computes the pixels of the target from (x0, y0) inclusive to (x1, y1) exclusive from the source, which has
+	 * twice the resolution.
+	 */
+	private static void halve(Raster source, WritableRaster target, int x0, int y0, int x1, int y1) {
+		int sourceWidth=source.getWidth(), sourceHeight=source.getHeight();
+		int bands=source.getNumBands();
+		int dataType=source.getTransferType();
+		boolean floatingPoint=dataType==DataBuffer.TYPE_FLOAT || dataType==DataBuffer.TYPE_DOUBLE;
+		int sourceX=source.getMinX(), sourceY=source.getMinY();
+		// the columns of the source that are read
+		int columnStart=2*x0, columns=Math.min(sourceWidth, 2*x1)-columnStart;
+		int width=x1-x0;
+
+		if (floatingPoint) {
+			double[] rows=new double[columns*bands*2];
+			double[] out=new double[width*bands];
+			for (int y=y0; y<y1; y++) {
+				int rowCount=Math.min(2, sourceHeight-2*y);
+				source.getPixels(sourceX+columnStart, sourceY+2*y, columns, rowCount, rows);
+				for (int x=0; x<width; x++) {
+					int colCount=Math.min(2, columns-2*x);
+					for (int b=0; b<bands; b++) {
+						double sum=0;
+						for (int dy=0; dy<rowCount; dy++)
+							for (int dx=0; dx<colCount; dx++)
+								sum+=rows[(dy*columns+2*x+dx)*bands+b];
+						out[x*bands+b]=sum/(rowCount*colCount);
+					}
+				}
+				target.setPixels(target.getMinX()+x0, target.getMinY()+y, width, 1, out);
+			}
+		} else {
+			int[] rows=new int[columns*bands*2];
+			int[] out=new int[width*bands];
+			for (int y=y0; y<y1; y++) {
+				int rowCount=Math.min(2, sourceHeight-2*y);
+				source.getPixels(sourceX+columnStart, sourceY+2*y, columns, rowCount, rows);
+				for (int x=0; x<width; x++) {
+					int colCount=Math.min(2, columns-2*x);
+					int count=rowCount*colCount;
+					for (int b=0; b<bands; b++) {
+						long sum=0;
+						for (int dy=0; dy<rowCount; dy++)
+							for (int dx=0; dx<colCount; dx++)
+								sum+=rows[(dy*columns+2*x+dx)*bands+b];
+						out[x*bands+b]=(int)((sum+count/2)/count);
+					}
+				}
+				target.setPixels(target.getMinX()+x0, target.getMinY()+y, width, 1, out);
+			}
+		}
+	}
+}
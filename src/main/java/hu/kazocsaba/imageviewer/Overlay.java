@@ -1,6 +1,7 @@
 package hu.kazocsaba.imageviewer;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
@@ -15,13 +16,13 @@ import java.util.List;
  * <pre>
  * 
  * class XPainter extends Overlay {
- *   public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {
+ *   public void paint(Graphics2D g, ImageSource source, AffineTransform transform) {
  *     g.setColor(Color.RED);
  *     double[] bounds={
  *       0, 0, 
- *       image.getWidth(), 0,
- *       image.getWidth(), image.getHeight(),
- *       0, image.getHeight()};
+ *       source.getWidth(), 0,
+ *       source.getWidth(), source.getHeight(),
+ *       0, source.getHeight()};
  *     transform.transform(bounds, 0, bounds, 0, 4);
  *     g.drawLine((int)bounds[0], (int)bounds[1], (int)bounds[4], (int)bounds[5]);
  *     g.drawLine((int)bounds[2], (int)bounds[3], (int)bounds[6], (int)bounds[7]);
@@ -29,30 +30,128 @@ import java.util.List;
  * }
  * </pre>
  * It can be added to a viewer by calling <code>viewer.addOverlay(new XPainter(), 10)</code>.
+ * <p>
+ * Overlays implement one of the two <code>paint</code> methods. The one receiving the {@link ImageSource} works with
+ * every kind of image. The one receiving a <code>BufferedImage</code> is called with {@code null} when the viewer
+ * displays an image source that is not a {@link BufferedImageSource}.
+ * <p>
+ * An overlay whose contents rarely change can be made {@link #setCacheable(boolean) cacheable}. The viewer then keeps
+ * the painted overlay in an image, and only calls <code>paint</code> again when the image, the image transformation
+ * or the size of the viewer changes, or when the overlay is repainted. This makes scrolling and image updates cheap
+ * even for overlays drawing thousands of shapes.
  * @author Kazó Csaba
  */
 public abstract class Overlay {
 	List<OverlayComponent> overlayComponents=new ArrayList<OverlayComponent>(1);
+	private volatile boolean cacheable=false;
 	final void addOverlayComponent(OverlayComponent c) {
 		overlayComponents.add(c);
 	}
 	final void removeOverlayComponent(OverlayComponent c) {
 		overlayComponents.remove(c);
+		c.releaseCache();
+	}
+	/**
+	 * Sets whether the painted contents of this overlay can be cached. A cacheable overlay must only depend on the
+	 * arguments of the {@link #paint(Graphics2D, BufferedImage, AffineTransform) paint} method; whenever anything else
+	 * affecting its appearance changes, one of the <code>repaint</code> methods must be called, otherwise the viewer
+	 * keeps displaying the old contents. The cache takes four bytes for each pixel of the visible area of the viewer
+	 * and a margin around it, so it should be enabled for overlays that are expensive to paint.
+	 * <p>
+	 * The default is {@code false}.
+	 * @param cacheable whether the overlay can be cached
+	 */
+	public void setCacheable(boolean cacheable) {
+		if (this.cacheable==cacheable) return;
+		this.cacheable=cacheable;
+		repaint();
+	}
+	/**
+	 * Returns whether the painted contents of this overlay can be cached.
+	 * @return {@code true} if the overlay is cacheable
+	 * @see #setCacheable(boolean)
+	 */
+	public boolean isCacheable() {
+		return cacheable;
 	}
 	/**
 	 * Causes the overlay to be repainted.
 	 */
 	public void repaint() {
 		for (OverlayComponent overlayComponent: overlayComponents)
-			overlayComponent.repaint();
+			overlayComponent.overlayChanged();
+	}
+	/**
+	 * Causes the part of the overlay covering the specified region of the image to be repainted. This is cheaper than
+	 * repainting the whole overlay when only a small part of it has changed.
+	 * @param imageRegion the region to repaint, in image coordinates
+	 * @throws NullPointerException if {@code imageRegion} is {@code null}
+	 */
+	public void repaint(Rectangle imageRegion) {
+		repaint(imageRegion, 0);
+	}
+	/**
+	 * Causes the part of the overlay covering the specified region of the image to be repainted, extended by a margin
+	 * on each side. The margin is measured in screen pixels, so it can account for parts of the overlay whose size does
+	 * not depend on the zoom, like markers or line widths.
+	 * <p>
+	 * This method can be called from any thread. When called from a thread other than the event dispatch thread,
+	 * the area to repaint is computed later on the event dispatch thread.
+	 * @param imageRegion the region to repaint, in image coordinates
+	 * @param margin the number of screen pixels by which the repainted area is extended on each side
+	 * @throws NullPointerException if {@code imageRegion} is {@code null}
+	 */
+	public void repaint(Rectangle imageRegion, int margin) {
+		if (imageRegion==null) throw new NullPointerException();
+		for (OverlayComponent overlayComponent: overlayComponents)
+			overlayComponent.repaint(imageRegion, margin);
+	}
+	/**
+	 * Returns the area that this overlay paints on, in the coordinate system of the graphics context passed to
+	 * {@link #paint(Graphics2D, BufferedImage, AffineTransform) paint}. The overlay is not painted at all when this
+	 * area is outside the region being repainted, which saves the cost of painting overlays that cover only a small
+	 * part of the image. The method is called before every paint, so it should be fast.
+	 * <p>
+	 * The default implementation returns {@code null}, meaning that the overlay can paint anywhere.
+	 * @param image the current image, or {@code null} if the image source is not a {@link BufferedImageSource}
+	 * @param transform the transformation applied to the image before displaying; it should not be modified
+	 * @return the bounds of the painted area, or {@code null} if they are not known
+	 */
+	public Rectangle getPaintBounds(BufferedImage image, AffineTransform transform) {
+		return null;
 	}
 	/**
 	 * Called to paint the contents of this overlay. The graphics context to paint on is a copy
 	 * for this overlay and can be freely modified.
 	 * <p>
-	 * The method receives the currently displayed image. The image is never <code>null</code> -
-	 * if there is currently no image being displayed in the image viewer, then the
-	 * <code>paint</code> method is not called.
+	 * The method receives the source of the currently displayed image, which is never {@code null}: if there is
+	 * currently no image being displayed in the image viewer, then the <code>paint</code> method is not called.
+	 * <p>
+	 * This method also receives the transformation that is applied to the image before it
+	 * is displayed. This transformation is most commonly the concatenation of a uniform scale
+	 * and a translation. The original image bounds (0, 0)
+	 * - (source.getWidth(), source.getHeight()) are mapped using this transformation to get the
+	 * final display bounds. The overlay should not rely on whether painting outside these
+	 * final bounds will be visible or not.
+	 * <p>
+	 * The default implementation calls {@link #paint(Graphics2D, BufferedImage, AffineTransform)} with the image of
+	 * the source, or with {@code null} if the source is not a {@link BufferedImageSource}.
+	 * @param g the graphics context to draw onto
+	 * @param source the current image source
+	 * @param transform the transformation applied to the image before displaying
+	 */
+	public void paint(Graphics2D g, ImageSource source, AffineTransform transform) {
+		paint(g, source instanceof BufferedImageSource ? ((BufferedImageSource)source).getImage() : null, transform);
+	}
+	/**
+	 * Called to paint the contents of this overlay by the default implementation of
+	 * {@link #paint(Graphics2D, ImageSource, AffineTransform)}. The graphics context to paint on is a copy
+	 * for this overlay and can be freely modified.
+	 * <p>
+	 * The method receives the currently displayed image. If there is currently no image being displayed in the
+	 * image viewer, then the <code>paint</code> method is not called. The image is <code>null</code> if the
+	 * viewer displays an {@link ImageSource} that is not a {@link BufferedImageSource}; overlays that should also work
+	 * with such sources should override {@link #paint(Graphics2D, ImageSource, AffineTransform)} instead.
 	 * <p>
 	 * This method also receives the transformation that is applied to the image before it
 	 * is displayed. This transformation is most commonly the concatenation of a uniform scale
@@ -60,9 +159,11 @@ public abstract class Overlay {
 	 * - (image.getWidth(), image.getHeight()) are mapped using this transformation to get the
 	 * final display bounds. The overlay should not rely on whether painting outside these
 	 * final bounds will be visible or not.
+	 * <p>
+	 * The default implementation does nothing.
 	 * @param g the graphics context to draw onto
-	 * @param image the current image
+	 * @param image the current image, or {@code null} if the image source is not a {@link BufferedImageSource}
 	 * @param transform the transformation applied to the image before displaying
 	 */
-	public abstract void paint(Graphics2D g, BufferedImage image, AffineTransform transform);
+	public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {}
 }
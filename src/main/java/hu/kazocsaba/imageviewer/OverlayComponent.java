@@ -1,33 +1,223 @@
 package hu.kazocsaba.imageviewer;
 
+import java.awt.AlphaComposite;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
 /**
  * The <code>JComponent</code> implementing an overlay.
  * @author Kazó Csaba
  */
 class OverlayComponent extends JComponent {
+	/* The largest number of pixels that a cache image can have; larger areas are painted directly. */
+	private static final int MAXIMUM_CACHE_PIXELS=1<<24;
 	Overlay overlay;
 	ImageComponent theImage;
+	/* The overlay receives a copy of the image transform, so that it cannot modify the one cached by the image. */
+	private final AffineTransform paintTransform=new AffineTransform();
+	/* The component painting this overlay when the overlays are composited, or null. */
+	private JComponent host;
+
+	/*
+	 * The cache of a cacheable overlay. It contains the overlay painted on the area cacheBounds of the component,
+	 * with the top left corner of the area at (0, 0). The cache image can be larger than the area. The cache is valid
+	 * for the image, image source, transform and component size that it was painted with.
+	 */
+	private BufferedImage cache;
+	private final Rectangle cacheBounds=new Rectangle();
+	private final AffineTransform cacheTransform=new AffineTransform();
+	private BufferedImage cacheImage;
+	private ImageSource cacheSource;
+	private int cacheWidth, cacheHeight;
+	/* The part of the cache that needs to be painted again, or null. */
+	private Rectangle cacheDirty;
+	private boolean cacheStale;
+	/* Guards the cache fields, which can be invalidated from any thread. */
+	private final Object cacheLock=new Object();
+
 	public OverlayComponent(Overlay overlay, ImageComponent image) {
 		this.overlay=overlay;
 		this.theImage=image;
 	}
 
+	/**
+	 * Called when the whole overlay has changed.
+	 */
+	void overlayChanged() {
+		synchronized (cacheLock) {
+			cacheStale=true;
+			cacheDirty=null;
+		}
+		repaint();
+	}
+
+	/**
+	 * Repaints the part of the component where the specified image region is displayed. Can be called from any
+	 * thread; the image transform is only valid on the event dispatch thread, so calls from other threads are
+	 * forwarded there.
+	 * @param imageRegion the region in image coordinates
+	 * @param margin the number of component pixels to add on each side of the transformed region
+	 */
+	void repaint(final Rectangle imageRegion, final int margin) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			// the region is copied, since the caller can modify it before the task runs
+			final Rectangle region=new Rectangle(imageRegion);
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+					repaint(region, margin);
+				}
+			});
+			return;
+		}
+		if (theImage.getImageSource()==null || !theImage.hasSize()) return;
+		Rectangle bounds=theImage.getImageTransform().createTransformedShape(imageRegion).getBounds();
+		bounds.grow(margin, margin);
+		synchronized (cacheLock) {
+			if (cacheDirty==null)
+				cacheDirty=new Rectangle(bounds);
+			else
+				cacheDirty.add(bounds);
+		}
+		repaint(bounds);
+	}
+
+	/**
+	 * Discards the cache image.
+	 */
+	void releaseCache() {
+		synchronized (cacheLock) {
+			cache=null;
+			cacheImage=null;
+			cacheSource=null;
+			cacheDirty=null;
+		}
+	}
+
+	/**
+	 * Sets the component that paints this overlay instead of this component. When set, this component is not part of
+	 * the component hierarchy, but it has the same bounds as the host, and it forwards its repaint requests to it.
+	 * @param host the component painting the overlay, or {@code null} if this component paints it
+	 */
+	void setHost(JComponent host) {
+		this.host=host;
+		releaseCache();
+	}
+
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		if (host!=null)
+			host.repaint(tm, x, y, width, height);
+		else
+			super.repaint(tm, x, y, width, height);
+	}
+
 	@Override
 	protected void paintComponent(Graphics g) {
-		BufferedImage image = theImage.getImage();
-		if (image!=null) {
+		if (theImage.getImageSource()!=null) {
 			Graphics2D gg=(Graphics2D)g.create();
-			overlay.paint(gg, image, theImage.getImageTransform());
+			Rectangle clip=new Rectangle(0, 0, getWidth(), getHeight());
+			if (gg.getClipBounds()!=null) clip=clip.intersection(gg.getClipBounds());
+			paintOverlay(gg, clip, theImage.getImage(), theImage.getImageTransform());
 			gg.dispose();
 		}
 	}
-	
+
+	/**
+	 * Paints the overlay, unless it is outside the clip area. The graphics context can be modified by the overlay.
+	 * @param g the graphics context of the component
+	 * @param clip the bounds of the clip area of the graphics context, within the component
+	 * @param image the current image
+	 * @param transform the current image transform; it is not modified
+	 * @return {@code false} if the overlay was skipped, and the graphics context was not touched
+	 */
+	boolean paintOverlay(Graphics2D g, Rectangle clip, BufferedImage image, AffineTransform transform) {
+		if (clip.isEmpty()) return false;
+		PaintMetrics metrics=theImage.getPaintMetrics();
+		long start=metrics==null ? 0 : System.nanoTime();
+		paintTransform.setTransform(transform);
+		Rectangle bounds=overlay.getPaintBounds(image, paintTransform);
+		if (bounds!=null && !bounds.intersects(clip)) return false;
+		if (!overlay.isCacheable() || !paintCached(g, clip, image, transform)) {
+			releaseCache();
+			paintTransform.setTransform(transform);
+			overlay.paint(g, theImage.getImageSource(), paintTransform);
+		}
+		if (metrics!=null) metrics.overlayPainted(overlay, System.nanoTime()-start);
+		return true;
+	}
+
+	/**
+	 * Paints the overlay from the cache, updating the cache first if necessary.
+	 * @return {@code false} if the cache cannot be used, and the overlay should be painted directly
+	 */
+	private boolean paintCached(Graphics2D g, Rectangle clip, BufferedImage image, AffineTransform transform) {
+		// the cache would be blurry if the graphics is scaled, like on high resolution displays
+		if ((g.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION)!=0) return false;
+
+		ImageSource source=theImage.getImageSource();
+		Rectangle dirty;
+		synchronized (cacheLock) {
+			if (cacheStale || cache==null || !cacheTransform.equals(transform) || cacheImage!=image || cacheSource!=source ||
+					cacheWidth!=getWidth() || cacheHeight!=getHeight() || !cacheBounds.contains(clip)) {
+				// cache the visible area and a margin around it, so that scrolling can also use the cache
+				Rectangle area=(host==null ? this : host).getVisibleRect();
+				area.grow(area.width/4, area.height/4);
+				area=area.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+				area.add(clip);
+				if ((long)area.width*area.height>MAXIMUM_CACHE_PIXELS) return false;
+				if (cache==null || cache.getWidth()<area.width || cache.getHeight()<area.height)
+					cache=createCacheImage(g.getDeviceConfiguration(), area.width, area.height);
+				cacheBounds.setBounds(area);
+				cacheTransform.setTransform(transform);
+				cacheImage=image;
+				cacheSource=source;
+				cacheWidth=getWidth();
+				cacheHeight=getHeight();
+				cacheStale=false;
+				dirty=new Rectangle(area);
+			} else {
+				dirty=cacheDirty==null ? null : cacheDirty.intersection(cacheBounds);
+			}
+			cacheDirty=null;
+		}
+
+		if (dirty!=null && !dirty.isEmpty()) {
+			Graphics2D cg=cache.createGraphics();
+			cg.setRenderingHints(g.getRenderingHints());
+			cg.translate(-cacheBounds.x, -cacheBounds.y);
+			cg.clip(dirty);
+			cg.setComposite(AlphaComposite.Clear);
+			cg.fill(dirty);
+			cg.setComposite(AlphaComposite.SrcOver);
+			cg.setColor(g.getColor());
+			cg.setFont(g.getFont());
+			paintTransform.setTransform(transform);
+			overlay.paint(cg, source, paintTransform);
+			cg.dispose();
+		}
+		g.drawImage(cache,
+				cacheBounds.x, cacheBounds.y, cacheBounds.x+cacheBounds.width, cacheBounds.y+cacheBounds.height,
+				0, 0, cacheBounds.width, cacheBounds.height, null);
+		return true;
+	}
+
+	private static BufferedImage createCacheImage(GraphicsConfiguration gc, int width, int height) {
+		if (gc!=null)
+			return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		else
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
 	@Override
 	public Dimension getMaximumSize() {
 		return new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE);
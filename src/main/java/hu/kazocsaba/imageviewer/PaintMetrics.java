@@ -0,0 +1,192 @@
+package hu.kazocsaba.imageviewer;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Statistics about the painting of an image viewer. Metrics collection is turned on by
+ * {@link ImageViewer#setPaintMetricsEnabled(boolean)}; it only adds a few time measurements and counter updates to each
+ * paint, so it can be left enabled.
+ * <p>
+ * The paint times are collected in a histogram with logarithmic buckets: bucket {@code i} counts the paints that took
+ * at least 2<sup>i</sup> and less than 2<sup>i+1</sup> microseconds (bucket 0 also includes the paints shorter than
+ * a microsecond, and the last bucket all the longer ones). The measured time covers painting the image itself, but
+ * not the overlays, which are measured separately for each overlay.
+ * <p>
+ * The image is painted in one of three ways, which are counted separately:
+ * <ul>
+ * <li>a shrunk image is painted from a cached rescaled image, which is redrawn when the image or the transformation
+ * changes; these are the cache hits and misses,</li>
+ * <li>zoomed images and images that are not in memory are painted from cached tiles; these are the tile hits and
+ * misses,</li>
+ * <li>otherwise the image is painted directly.</li>
+ * </ul>
+ * <p>
+ * The metrics are updated on the event dispatch thread, but they can be read from any thread.
+ * @author Kazó Csaba
+ */
+public final class PaintMetrics {
+	/** The number of buckets in the paint time histogram. */
+	public static final int HISTOGRAM_BUCKETS=24;
+
+	private final long[] histogram=new long[HISTOGRAM_BUCKETS];
+	private long paintCount, totalPaintTime, maxPaintTime;
+	private long cacheHits, cacheMisses, tileHits, tileMisses, directPaints;
+	private long cachedBytes;
+	private final Map<Overlay, long[]> overlayTimes=new WeakHashMap<Overlay, long[]>();
+
+	PaintMetrics() {}
+
+	synchronized void paintFinished(long nanos, long cachedBytes) {
+		paintCount++;
+		totalPaintTime+=nanos;
+		if (nanos>maxPaintTime) maxPaintTime=nanos;
+		long micros=nanos/1000;
+		int bucket=micros==0 ? 0 : 63-Long.numberOfLeadingZeros(micros);
+		histogram[Math.min(bucket, HISTOGRAM_BUCKETS-1)]++;
+		this.cachedBytes=cachedBytes;
+	}
+
+	synchronized void cacheAccessed(boolean hit) {
+		if (hit) cacheHits++; else cacheMisses++;
+	}
+
+	synchronized void tilesAccessed(int hits, int misses) {
+		tileHits+=hits;
+		tileMisses+=misses;
+	}
+
+	synchronized void directPaint() {
+		directPaints++;
+	}
+
+	synchronized void overlayPainted(Overlay overlay, long nanos) {
+		long[] times=overlayTimes.get(overlay);
+		if (times==null) {
+			times=new long[2];
+			overlayTimes.put(overlay, times);
+		}
+		times[0]++;
+		times[1]+=nanos;
+	}
+
+	/**
+	 * Returns the number of times the image was painted.
+	 * @return the number of paints
+	 */
+	public synchronized long getPaintCount() {
+		return paintCount;
+	}
+
+	/**
+	 * Returns the total time spent painting the image.
+	 * @return the total paint time in nanoseconds
+	 */
+	public synchronized long getTotalPaintTime() {
+		return totalPaintTime;
+	}
+
+	/**
+	 * Returns the duration of the longest paint.
+	 * @return the longest paint time in nanoseconds
+	 */
+	public synchronized long getMaxPaintTime() {
+		return maxPaintTime;
+	}
+
+	/**
+	 * Returns the histogram of paint times.
+	 * @return a new array of length {@link #HISTOGRAM_BUCKETS} containing the number of paints in each bucket
+	 */
+	public synchronized long[] getPaintTimeHistogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * Returns the number of times a shrunk image could be painted from the cache.
+	 * @return the number of cache hits
+	 */
+	public synchronized long getCacheHitCount() {
+		return cacheHits;
+	}
+
+	/**
+	 * Returns the number of times the cached shrunk image had to be redrawn.
+	 * @return the number of cache misses
+	 */
+	public synchronized long getCacheMissCount() {
+		return cacheMisses;
+	}
+
+	/**
+	 * Returns the number of tiles painted from the tile cache.
+	 * @return the number of tile cache hits
+	 */
+	public synchronized long getTileHitCount() {
+		return tileHits;
+	}
+
+	/**
+	 * Returns the number of tiles that had to be rendered.
+	 * @return the number of tile cache misses
+	 */
+	public synchronized long getTileMissCount() {
+		return tileMisses;
+	}
+
+	/**
+	 * Returns the number of times the image was painted directly, without any caching.
+	 * @return the number of direct paints
+	 */
+	public synchronized long getDirectPaintCount() {
+		return directPaints;
+	}
+
+	/**
+	 * Returns the memory used by the caches of the viewer at the end of the last paint. This includes the cached
+	 * shrunk image, the reduced resolution versions of the image, the cached tiles and the display copy of the image,
+	 * but not the image itself.
+	 * @return the size of the cached images in bytes
+	 */
+	public synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/**
+	 * Returns the number of times an overlay was painted.
+	 * @param overlay an overlay of the viewer
+	 * @return the number of times the overlay was painted since the metrics were last reset
+	 */
+	public synchronized long getOverlayPaintCount(Overlay overlay) {
+		long[] times=overlayTimes.get(overlay);
+		return times==null ? 0 : times[0];
+	}
+
+	/**
+	 * Returns the total time spent painting an overlay.
+	 * @param overlay an overlay of the viewer
+	 * @return the total paint time of the overlay in nanoseconds
+	 */
+	public synchronized long getOverlayPaintTime(Overlay overlay) {
+		long[] times=overlayTimes.get(overlay);
+		return times==null ? 0 : times[1];
+	}
+
+	/**
+	 * Resets all counters and times to zero. The cached byte count is kept, since it describes the current state of
+	 * the viewer.
+	 */
+	public synchronized void reset() {
+		for (int i=0; i<histogram.length; i++) histogram[i]=0;
+		paintCount=totalPaintTime=maxPaintTime=0;
+		cacheHits=cacheMisses=tileHits=tileMisses=directPaints=0;
+		overlayTimes.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("PaintMetrics[paints=%d, mean=%.2fms, max=%.2fms, cache=%d/%d, tiles=%d/%d, direct=%d, cached=%dkB]",
+				paintCount, paintCount==0 ? 0 : totalPaintTime/1e6/paintCount, maxPaintTime/1e6,
+				cacheHits, cacheHits+cacheMisses, tileHits, tileHits+tileMisses, directPaints, cachedBytes/1024);
+	}
+}
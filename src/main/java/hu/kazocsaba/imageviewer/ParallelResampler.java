@@ -0,0 +1,328 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scales and converts images using all processor cores. Scaling uses a {@link ResamplingFilter}, which is separable:
+ * each task first filters the source rows it needs horizontally, then combines them vertically into its band of
+ * destination rows, and writes the result into the target raster.
+ * @author Kazó Csaba
+ */
+class ParallelResampler {
+	/* The approximate number of bands per thread; more bands balance the load better, but recompute more rows. */
+	private static final int BANDS_PER_THREAD=4;
+	private static final int MINIMUM_BAND_HEIGHT=8;
+
+	private static ExecutorService executor;
+	private static int threadCount;
+
+	private ParallelResampler() {}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor==null) {
+			threadCount=Runtime.getRuntime().availableProcessors();
+			executor=Executors.newFixedThreadPool(threadCount, new DaemonThreadFactory("ImageViewer-resampler"));
+		}
+		return executor;
+	}
+
+	/**
+	 * The source pixels contributing to each destination pixel along one axis, with their normalized weights.
+	 */
+	private static final class Contributors {
+		final int[] start, count;
+		final float[] weights;
+		/* The number of weights stored for each destination pixel, some of which may be unused. */
+		final int maxCount;
+
+		/**
+		 * Computes the contributors from a source of the specified size. The start indices are relative to
+		 * {@code sourceOffset}, so that they can index a region of the source starting there.
+		 */
+		Contributors(int destinationStart, int destinationEnd, int sourceOffset, int sourceSize, double scale, double translate, ResamplingFilter filter) {
+			int size=destinationEnd-destinationStart;
+			start=new int[size];
+			count=new int[size];
+			// when shrinking, the filter is stretched to cover all the source pixels under a destination pixel
+			double filterScale=Math.min(scale, 1);
+			double support=filter.getSupport()/filterScale;
+			int capacity=(int)Math.ceil(2*support)+2;
+			weights=new float[size*capacity];
+			for (int i=0; i<size; i++) {
+				double center=(destinationStart+i+.5-translate)/scale;
+				int first=Math.max(0, (int)Math.floor(center-support));
+				int last=Math.min(sourceSize-1, (int)Math.ceil(center+support));
+				double sum=0;
+				int n=0;
+				for (int s=first; s<=last && n<capacity; s++) {
+					double w;
+					if (filter==ResamplingFilter.AREA_AVERAGE)
+						// the exact area of the source pixel covered by the destination pixel
+						w=Math.max(0, Math.min(s+1, center+support)-Math.max(s, center-support));
+					else
+						w=filter.weight((s+.5-center)*filterScale);
+					if (n==0 && w==0) {
+						first=s+1;
+						continue;
+					}
+					weights[i*capacity+n++]=(float)w;
+					sum+=w;
+				}
+				// drop trailing zero weights
+				while (n>0 && weights[i*capacity+n-1]==0) n--;
+				if (n==0 || sum==0) {
+					// the pixel is outside the image or between its samples; use the nearest one
+					first=Math.max(0, Math.min(sourceSize-1, (int)Math.floor(center)));
+					weights[i*capacity]=1;
+					n=1;
+					sum=1;
+				}
+				for (int k=0; k<n; k++) weights[i*capacity+k]/=sum;
+				start[i]=first-sourceOffset;
+				count[i]=n;
+			}
+			maxCount=capacity;
+		}
+	}
+
+	/**
+	 * Draws the scaled source image onto the target. The source is placed according to the scale and translation,
+	 * composited over the background colour, and only the destination pixels covered by the source are written.
+	 * The method returns when the whole image has been drawn.
+	 * @param source the image to scale
+	 * @param target the image to draw onto; only its opaque colour is written
+	 * @param scale the scale of the image
+	 * @param translateX the x coordinate of the top left corner of the scaled image on the target
+	 * @param translateY the y coordinate of the top left corner of the scaled image on the target
+	 * @param filter the resampling filter
+	 * @param background the colour the source is composited over, where it is not opaque
+	 * @param clip the area of the target to draw, or {@code null} to draw the whole image
+	 */
+	public static void resample(BufferedImage source, BufferedImage target, double scale, double translateX, double translateY,
+			ResamplingFilter filter, Color background, Rectangle clip) {
+		resample(source, 0, 0, source.getWidth(), source.getHeight(), target, scale, translateX, translateY, filter, background, clip);
+	}
+
+	/**
+	 * Draws the scaled source image onto the target, like {@link #resample(BufferedImage, BufferedImage, double,
+	 * double, double, ResamplingFilter, Color, Rectangle)}, but only a region of the source is given. The result is
+	 * the same as if the whole source had been given.
+	 * @param region the pixels of the region of the source starting at {@code (regionX, regionY)}; it must contain
+	 * the region returned by {@link #getSourceRegion} for the clip
+	 * @param regionX the x coordinate of the region within the source
+	 * @param regionY the y coordinate of the region within the source
+	 * @param sourceWidth the width of the whole source
+	 * @param sourceHeight the height of the whole source
+	 */
+	static void resample(final BufferedImage region, int regionX, int regionY, int sourceWidth, int sourceHeight,
+			final BufferedImage target, double scale, double translateX, double translateY, ResamplingFilter filter, Color background, Rectangle clip) {
+		Rectangle area=new Rectangle(0, 0, target.getWidth(), target.getHeight());
+		if (clip!=null) area=area.intersection(clip);
+		final int x0=Math.max(area.x, (int)Math.floor(translateX));
+		final int x1=Math.min(area.x+area.width, (int)Math.ceil(translateX+sourceWidth*scale));
+		int y0=Math.max(area.y, (int)Math.floor(translateY));
+		int y1=Math.min(area.y+area.height, (int)Math.ceil(translateY+sourceHeight*scale));
+		if (x0>=x1 || y0>=y1) return;
+
+		final Contributors horizontal=new Contributors(x0, x1, regionX, sourceWidth, scale, translateX, filter);
+		final Contributors vertical=new Contributors(y0, y1, regionY, sourceHeight, scale, translateY, filter);
+		final int backgroundRGB=background.getRGB();
+
+		ExecutorService pool=getExecutor();
+		int bandHeight=Math.max(MINIMUM_BAND_HEIGHT, (y1-y0+threadCount*BANDS_PER_THREAD-1)/(threadCount*BANDS_PER_THREAD));
+		List<Future<?>> bands=new ArrayList<Future<?>>();
+		for (int bandStart=y0; bandStart<y1; bandStart+=bandHeight) {
+			final int bandY0=bandStart, bandY1=Math.min(y1, bandStart+bandHeight), offset=y0;
+			bands.add(pool.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					resampleBand(region, target, horizontal, vertical, x0, x1, bandY0-offset, bandY1-offset, offset, backgroundRGB);
+					return null;
+				}
+			}));
+		}
+		waitFor(bands);
+	}
+
+	/**
+	 * Returns the pixels of the source that are read when drawing an area of the target.
+	 * @param sourceWidth the width of the source
+	 * @param sourceHeight the height of the source
+	 * @param scale the scale of the image
+	 * @param translateX the x coordinate of the top left corner of the scaled image on the target
+	 * @param translateY the y coordinate of the top left corner of the scaled image on the target
+	 * @param filter the resampling filter
+	 * @param clip the area of the target to draw
+	 * @return the region of the source that contributes to the area; it can be empty
+	 */
+	static Rectangle getSourceRegion(int sourceWidth, int sourceHeight, double scale, double translateX, double translateY,
+			ResamplingFilter filter, Rectangle clip) {
+		double support=filter.getSupport()/Math.min(scale, 1);
+		// one more pixel on each side covers the rounding of the contributor ranges
+		int x0=(int)Math.floor((clip.x-translateX)/scale-support)-1;
+		int x1=(int)Math.ceil((clip.x+clip.width-translateX)/scale+support)+1;
+		int y0=(int)Math.floor((clip.y-translateY)/scale-support)-1;
+		int y1=(int)Math.ceil((clip.y+clip.height-translateY)/scale+support)+1;
+		return new Rectangle(x0, y0, x1-x0, y1-y0).intersection(new Rectangle(0, 0, sourceWidth, sourceHeight));
+	}
+
+	/**
+	 * Copies an image into another one of the same size, converting the pixels to the format of the target. The
+	 * image is split into stripes which are converted in parallel. The method returns when the whole image has been
+	 * copied.
+	 * @param source the image to copy
+	 * @param target the image to copy into
+	 */
+	public static void copy(final BufferedImage source, final BufferedImage target) {
+		ExecutorService pool=getExecutor();
+		int height=source.getHeight();
+		int stripeHeight=Math.max(MINIMUM_BAND_HEIGHT, (height+threadCount*BANDS_PER_THREAD-1)/(threadCount*BANDS_PER_THREAD));
+		List<Future<?>> stripes=new ArrayList<Future<?>>();
+		for (int stripeStart=0; stripeStart<height; stripeStart+=stripeHeight) {
+			final int y=stripeStart, h=Math.min(stripeHeight, height-stripeStart);
+			stripes.add(pool.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					Graphics2D g=target.createGraphics();
+					g.setComposite(AlphaComposite.Src);
+					g.drawImage(source.getSubimage(0, y, source.getWidth(), h), 0, y, null);
+					g.dispose();
+					return null;
+				}
+			}));
+		}
+		waitFor(stripes);
+	}
+
+	/**
+	 * Waits until all the tasks are done, rethrowing their exceptions.
+	 */
+	private static void waitFor(List<Future<?>> tasks) {
+		try {
+			for (Future<?> task: tasks) task.get();
+		} catch (InterruptedException e) {
+			for (Future<?> task: tasks) task.cancel(false);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause=e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Computes the destination rows from {@code firstRow} to {@code lastRow} (exclusive), counted from the first
+	 * covered row of the target.
+	 */
+	private static void resampleBand(BufferedImage source, BufferedImage target, Contributors horizontal, Contributors vertical,
+			int x0, int x1, int firstRow, int lastRow, int rowOffset, int backgroundRGB) {
+		int width=x1-x0;
+		int sourceY0=vertical.start[firstRow], sourceY1=sourceY0;
+		for (int row=firstRow; row<lastRow; row++) sourceY1=Math.max(sourceY1, vertical.start[row]+vertical.count[row]);
+		int sourceX0=horizontal.start[0], sourceX1=sourceX0;
+		for (int i=0; i<width; i++) sourceX1=Math.max(sourceX1, horizontal.start[i]+horizontal.count[i]);
+
+		// horizontally filtered rows, four premultiplied channels per pixel
+		float[] rows=new float[(sourceY1-sourceY0)*width*4];
+		int[] sourceRow=new int[sourceX1-sourceX0];
+		for (int y=sourceY0; y<sourceY1; y++) {
+			readRow(source, sourceX0, y, sourceRow);
+			int base=(y-sourceY0)*width*4;
+			for (int i=0; i<width; i++) {
+				float a=0, r=0, g=0, b=0;
+				int w=i*horizontal.maxCount;
+				for (int k=0, s=horizontal.start[i]-sourceX0; k<horizontal.count[i]; k++, s++) {
+					int argb=sourceRow[s];
+					float weight=horizontal.weights[w+k];
+					float alpha=(argb>>>24)*weight;
+					a+=alpha;
+					r+=((argb>>16)&0xff)*alpha;
+					g+=((argb>>8)&0xff)*alpha;
+					b+=(argb&0xff)*alpha;
+				}
+				rows[base+4*i]=a;
+				rows[base+4*i+1]=r;
+				rows[base+4*i+2]=g;
+				rows[base+4*i+3]=b;
+			}
+		}
+
+		int backgroundR=(backgroundRGB>>16)&0xff, backgroundG=(backgroundRGB>>8)&0xff, backgroundB=backgroundRGB&0xff;
+		int[] out=new int[width];
+		for (int row=firstRow; row<lastRow; row++) {
+			int w=row*vertical.maxCount;
+			for (int i=0; i<width; i++) {
+				float a=0, r=0, g=0, b=0;
+				for (int k=0, y=vertical.start[row]-sourceY0; k<vertical.count[row]; k++, y++) {
+					float weight=vertical.weights[w+k];
+					int index=(y*width+i)*4;
+					a+=rows[index]*weight;
+					r+=rows[index+1]*weight;
+					g+=rows[index+2]*weight;
+					b+=rows[index+3]*weight;
+				}
+				// the channels are premultiplied by 255*alpha
+				float transparency=1-Math.max(0, Math.min(255, a))/255;
+				out[i]=0xff000000 |
+						clamp(r/255+backgroundR*transparency)<<16 |
+						clamp(g/255+backgroundG*transparency)<<8 |
+						clamp(b/255+backgroundB*transparency);
+			}
+			writeRow(target, x0, rowOffset+row, out);
+		}
+	}
+
+	private static int clamp(float value) {
+		return value<=0 ? 0 : value>=255 ? 255 : (int)(value+.5f);
+	}
+
+	/**
+	 * Returns whether the image stores pixels as packed RGB or non-premultiplied ARGB integers, so that they can be
+	 * accessed directly.
+	 */
+	private static boolean isPackedRGB(BufferedImage image) {
+		if (!(image.getRaster().getDataBuffer() instanceof DataBufferInt) ||
+				!(image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+				!(image.getColorModel() instanceof DirectColorModel))
+			return false;
+		DirectColorModel cm=(DirectColorModel)image.getColorModel();
+		return cm.getRedMask()==0xff0000 && cm.getGreenMask()==0xff00 && cm.getBlueMask()==0xff &&
+				(cm.getAlphaMask()==0 || cm.getAlphaMask()==0xff000000) && !cm.isAlphaPremultiplied();
+	}
+
+	/** Reads a part of a row of the image as ARGB values; the length of the array is the number of pixels. */
+	private static void readRow(BufferedImage image, int x, int y, int[] argb) {
+		if (isPackedRGB(image)) {
+			// getDataElements copies the array without making the image unmanaged, unlike accessing the data buffer
+			image.getRaster().getDataElements(x, y, argb.length, 1, argb);
+			if (!image.getColorModel().hasAlpha())
+				for (int i=0; i<argb.length; i++) argb[i]|=0xff000000;
+		} else
+			image.getRGB(x, y, argb.length, 1, argb, 0, argb.length);
+	}
+
+	/** Writes opaque ARGB values into a row of the image. */
+	private static void writeRow(BufferedImage image, int x, int y, int[] argb) {
+		if (isPackedRGB(image))
+			image.getRaster().setDataElements(x, y, argb.length, 1, argb);
+		else
+			image.setRGB(x, y, argb.length, 1, argb, 0, argb.length);
+	}
+}
@@ -1,8 +1,11 @@
 package hu.kazocsaba.imageviewer;
 
-import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Insets;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import javax.swing.BorderFactory;
@@ -29,6 +32,15 @@ public class PixelInfoStatusBar extends StatusBar {
 	
 	private PixelModel model;
 	
+	/* Reused buffers, so that updating the label creates no garbage unless the displayed text changes. */
+	private final StringBuilder text=new StringBuilder(64);
+	private char[] textChars=new char[64];
+	private Object pixelData=null;
+	private int pixelDataType, pixelDataLength;
+	private final Insets labelInsets=new Insets(0, 0, 0, 0);
+	private Font metricsFont=null;
+	private FontMetrics metrics=null;
+	
 	private PropertyChangeListener propertyChangeListener=new PropertyChangeListener() {
 
 		@Override
@@ -105,11 +117,11 @@ public class PixelInfoStatusBar extends StatusBar {
 	 * that the message should be updated for some different reason.
 	 */
 	protected final void update() {
-		BufferedImage image=getImageViewer()==null ? null : getImageViewer().getImage();
-		if (image==null || model.isInvalid() || model.getX()>=image.getWidth() || model.getY()>=image.getHeight())
+		ImageSource source=getImageViewer()==null ? null : getImageViewer().getImageSource();
+		if (source==null || model.isInvalid() || model.getX()>=source.getWidth() || model.getY()>=source.getHeight())
 			updateLabelNoData();
 		else
-			updateLabel(image, model.getX(), model.getY(), statusBar.getWidth()-statusBarInsets.left-statusBarInsets.right);
+			updateLabel(source, model.getX(), model.getY(), statusBar.getWidth()-statusBarInsets.left-statusBarInsets.right);
 	}
 	
 	/**
@@ -121,6 +133,24 @@ public class PixelInfoStatusBar extends StatusBar {
 		label.setText("n/a");
 	}
 	
+	/**
+	 * This function updates the contents of the {@link #label} for an image source. It is called by {@code update}
+	 * with the same conditions as {@link #updateLabel(BufferedImage, int, int, int)}. The default implementation
+	 * calls that function if the source is a {@link BufferedImageSource}, and otherwise reads the pixel from the
+	 * source and displays it the same way.
+	 * @param source the current image source displayed in the viewer
+	 * @param x the x coordinate of the pixel that should be displayed
+	 * @param y the y coordinate of the pixel that should be displayed
+	 * @param availableWidth the maximum label width that can be displayed; you can use this parameter to specify a shorter
+	 * message if there is not enough room
+	 */
+	protected void updateLabel(ImageSource source, int x, int y, int availableWidth) {
+		if (source instanceof BufferedImageSource)
+			updateLabel(((BufferedImageSource)source).getImage(), x, y, availableWidth);
+		else
+			showPixel(source.readRegion(x, y, 1, 1, 1), 0, 0, x, y, availableWidth);
+	}
+	
 	/**
 	 * This function updates the contents of the {@link #label}. It is called when the highlighted pixel or the image changes,
 	 * and only when the image is not {@code null} and the pixel is within the bounds of the image. If either of these
@@ -133,49 +163,80 @@ public class PixelInfoStatusBar extends StatusBar {
 	 * message if there is not enough room
 	 */
 	protected void updateLabel(BufferedImage image, int x, int y, int availableWidth) {
-		if (image.getRaster().getNumBands()==1) {
-			label.setText(String.format("%d, %d; intensity %d", x, y,
-					image.getRaster().getSample(x, y, 0)));
-		} else if (image.getRaster().getNumBands()==4) {
-			int rgb = image.getRGB(x, y);
-			Color c = new Color(rgb, true);
-			label.setText(String.format("%d, %d; color %d,%d,%d, alpha %d", x, y,
-					c.getRed(), c.getGreen(), c.getBlue(), c.getAlpha()));
+		showPixel(image, x, y, x, y, availableWidth);
+	}
+	
+	/**
+	 * Displays the value of the pixel at (px, py) of the image as the value of the pixel (x, y).
+	 */
+	private void showPixel(BufferedImage image, int px, int py, int x, int y, int availableWidth) {
+		WritableRaster raster=image.getRaster();
+		int bands=raster.getNumBands();
+		if (bands==1) {
+			int intensity=raster.getSample(px, py, 0);
+			formatIntensity(x, y, intensity, false);
+			if (availableWidth<getTextWidth()) formatIntensity(x, y, intensity, true);
 		} else {
-			int rgb = image.getRGB(x, y);
-			Color c = new Color(rgb);
-			label.setText(String.format("%d, %d; color %d,%d,%d", x, y,
-					c.getRed(), c.getGreen(), c.getBlue()));
+			// read the pixel into a reused array instead of calling getRGB, which allocates a new one
+			if (pixelData!=null && (pixelDataType!=raster.getTransferType() || pixelDataLength!=raster.getNumDataElements()))
+				pixelData=null;
+			pixelData=raster.getDataElements(px, py, pixelData);
+			pixelDataType=raster.getTransferType();
+			pixelDataLength=raster.getNumDataElements();
+			ColorModel cm=image.getColorModel();
+			int red=cm.getRed(pixelData), green=cm.getGreen(pixelData), blue=cm.getBlue(pixelData);
+			int alpha=bands==4 ? cm.getAlpha(pixelData) : -1;
+			formatColor(x, y, red, green, blue, alpha, false);
+			if (availableWidth<getTextWidth()) formatColor(x, y, red, green, blue, alpha, true);
 		}
-
-		if (availableWidth<label.getPreferredSize().width) {
-			// not enough space, shorter version is required
-			if (image.getRaster().getNumBands()==1) {
-				label.setText(String.format("%d, %d; %d", x, y,
-						image.getRaster().getSample(x, y, 0)));
-			} else if (image.getRaster().getNumBands()==4) {
-				int rgb = image.getRGB(x, y);
-				Color c = new Color(rgb, true);
-				label.setText(String.format("%d, %d; (%d,%d,%d,%d)", x, y,
-						c.getRed(), c.getGreen(), c.getBlue(), c.getAlpha()));
-			} else {
-				int rgb = image.getRGB(x, y);
-				Color c = new Color(rgb);
-				label.setText(String.format("%d, %d; (%d,%d,%d)", x, y,
-						c.getRed(), c.getGreen(), c.getBlue()));
-			}
+		
+		// only touch the label if the text has changed
+		String current=label.getText();
+		if (current==null || !current.contentEquals(text))
+			label.setText(text.toString());
+	}
+	
+	private void formatIntensity(int x, int y, int intensity, boolean shortFormat) {
+		text.setLength(0);
+		text.append(x).append(", ").append(y).append(shortFormat ? "; " : "; intensity ").append(intensity);
+	}
+	
+	/** Formats the color into the text buffer; alpha is -1 if the image has no alpha channel. */
+	private void formatColor(int x, int y, int red, int green, int blue, int alpha, boolean shortFormat) {
+		text.setLength(0);
+		text.append(x).append(", ").append(y).append(shortFormat ? "; (" : "; color ");
+		text.append(red).append(',').append(green).append(',').append(blue);
+		if (alpha>=0) text.append(shortFormat ? "," : ", alpha ").append(alpha);
+		if (shortFormat) text.append(')');
+	}
+	
+	/**
+	 * Returns the preferred width of the label if it displayed the contents of the text buffer.
+	 */
+	private int getTextWidth() {
+		Font font=label.getFont();
+		if (font!=metricsFont) {
+			metrics=label.getFontMetrics(font);
+			metricsFont=font;
 		}
+		int length=text.length();
+		if (textChars.length<length) textChars=new char[2*length];
+		text.getChars(0, length, textChars, 0);
+		label.getInsets(labelInsets);
+		return metrics.charsWidth(textChars, 0, length)+labelInsets.left+labelInsets.right;
 	}
 
 	@Override
 	protected void register(ImageViewer viewer) {
-		viewer.addPropertyChangeListener("image", propertyChangeListener);
+		viewer.addPropertyChangeListener("imageSource", propertyChangeListener);
+		viewer.addPropertyChangeListener("imageContents", propertyChangeListener);
 		update();
 	}
 
 	@Override
 	protected void unregister(ImageViewer viewer) {
-		viewer.removePropertyChangeListener("image", propertyChangeListener);
+		viewer.removePropertyChangeListener("imageSource", propertyChangeListener);
+		viewer.removePropertyChangeListener("imageContents", propertyChangeListener);
 	}
 
 }
@@ -3,11 +3,12 @@ package hu.kazocsaba.imageviewer;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * An overlay for marking pixels of the image. A circle will be drawn around the selected pixels; the size of the circle
@@ -16,13 +17,19 @@ import java.util.Set;
  * The default size is 5 pixels and the default color is red.
  * <p>
  * This object stores the list of pixels; this list can be edited with the {@link #setPoint(Point)},
- * {@link #setPoints(Iterable)}, {@link #addPoint(Point)}, and {@link #clear()} functions. All of these
- * mutator functions cause the overlay to be repainted.
+ * {@link #setPoints(Iterable)}, {@link #setPoints(int[], int[])}, {@link #addPoint(Point)},
+ * {@link #addPoints(int[], int[])}, {@link #removePoint(Point)}, and {@link #clear()} functions. All of these
+ * mutator functions cause the overlay to be repainted; adding or removing a single point only repaints the area
+ * around it.
+ * <p>
+ * The pixels are stored in a spatial index, so painting only visits the markers in the visible part of the image.
+ * When the image is zoomed out so much that a lot of markers would fall on the same screen pixel, the overlay paints a
+ * single marker for each group of nearby pixels instead, filled with a shade that is more opaque for denser groups.
  * @author Kazó Csaba
  */
 public final class PixelMarkerOverlay extends Overlay {
 
-	private Set<Point> points = new HashSet<Point>();
+	private final MarkerIndex points = new MarkerIndex();
 	private Color color = Color.RED;
 	private int size = 5;
 
@@ -55,8 +62,50 @@ public final class PixelMarkerOverlay extends Overlay {
 	 */
 	public void addPoint(Point p) {
 		if (p == null) throw new NullPointerException();
-		points.add(new Point(p));
-		repaint();
+		if (points.add(p.x, p.y)) repaintPoint(p.x, p.y);
+	}
+
+	/**
+	 * Removes a point from the list of pixels marked by this overlay.
+	 * @param p the point to remove
+	 * @throws NullPointerException if {@code p} is {@code null}
+	 */
+	public void removePoint(Point p) {
+		if (p == null) throw new NullPointerException();
+		if (points.remove(p.x, p.y)) repaintPoint(p.x, p.y);
+	}
+
+	/**
+	 * Repaints the area where adding or removing the specified pixel changes the overlay. The overlay can be shown by
+	 * several viewers at different zoom levels, so the area is computed separately for each of them.
+	 */
+	private void repaintPoint(int x, int y) {
+		for (OverlayComponent overlayComponent: overlayComponents) {
+			ImageComponent image = overlayComponent.theImage;
+			if (image.getImageSource() == null || !image.hasSize()) continue;
+			int cellSize = getAggregateCellSize(image.getImageTransform().getScaleX());
+			Rectangle region;
+			if (cellSize == 0) {
+				/* the circle reaches a bit beyond the pixel when the marker is enlarged to contain it */
+				region = new Rectangle(x - 1, y - 1, 3, 3);
+			} else {
+				int shift = Integer.numberOfTrailingZeros(cellSize);
+				region = new Rectangle((x >> shift) << shift, (y >> shift) << shift, cellSize, cellSize);
+			}
+			overlayComponent.repaint(region, size + 2);
+		}
+	}
+
+	/**
+	 * Returns the size of the cells that are painted as a single marker at the specified scale, or 0 if each point is
+	 * painted separately.
+	 */
+	private static int getAggregateCellSize(double scale) {
+		if (scale * MarkerIndex.CELL_SIZE >= 1) return 0;
+		int level = 0;
+		while (level < MarkerIndex.LEVELS - 1 && (MarkerIndex.CELL_SIZE << (level + 1)) * scale <= 1)
+			level++;
+		return MarkerIndex.CELL_SIZE << level;
 	}
 
 	/**
@@ -66,7 +115,7 @@ public final class PixelMarkerOverlay extends Overlay {
 	public void setPoint(Point p) {
 		points.clear();
 		if (p!=null) {
-			points.add(new Point(p));
+			points.add(p.x, p.y);
 		}
 		repaint();
 	}
@@ -80,31 +129,126 @@ public final class PixelMarkerOverlay extends Overlay {
 		if (points==null) throw new NullPointerException();
 		this.points.clear();
 		for (Point p : points) {
-			this.points.add(new Point(p));
+			this.points.add(p.x, p.y);
 		}
 		repaint();
 	}
 
+	/**
+	 * Sets the marked pixels. This function is more efficient than {@link #setPoints(Iterable)} for a large number of
+	 * pixels.
+	 * @param xs the x coordinates of the pixels
+	 * @param ys the y coordinates of the pixels
+	 * @throws NullPointerException if either argument is {@code null}
+	 * @throws IllegalArgumentException if the arrays have different lengths
+	 */
+	public void setPoints(int[] xs, int[] ys) {
+		checkCoordinates(xs, ys);
+		points.clear();
+		for (int i=0; i<xs.length; i++)
+			points.add(xs[i], ys[i]);
+		repaint();
+	}
+
+	/**
+	 * Adds pixels to the list of pixels marked by this overlay.
+	 * @param xs the x coordinates of the new pixels
+	 * @param ys the y coordinates of the new pixels
+	 * @throws NullPointerException if either argument is {@code null}
+	 * @throws IllegalArgumentException if the arrays have different lengths
+	 */
+	public void addPoints(int[] xs, int[] ys) {
+		checkCoordinates(xs, ys);
+		for (int i=0; i<xs.length; i++)
+			points.add(xs[i], ys[i]);
+		repaint();
+	}
+
+	private static void checkCoordinates(int[] xs, int[] ys) {
+		if (xs==null || ys==null) throw new NullPointerException();
+		if (xs.length!=ys.length) throw new IllegalArgumentException("Coordinate arrays have different lengths");
+	}
+
 	/**
 	 * Removes all pixels from the overlay, clearing the selection.
 	 */
 	public void clear() {
-		if (!points.isEmpty()) {
+		if (points.size()!=0) {
 			points.clear();
 			repaint();
 		}
 	}
 
 	@Override
-	public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {
+	public void paint(final Graphics2D g, BufferedImage image, final AffineTransform transform) {
 		g.setColor(color);
-		Point2D p2d = new Point2D.Double();
-		int currentSize = Math.max(size, (int) Math.ceil(transform.getScaleX() / Math.sqrt(2)));
+		final double scale = transform.getScaleX();
+		final int currentSize = Math.max(size, (int) Math.ceil(scale / Math.sqrt(2)));
+		Rectangle region = getVisibleRegion(g, transform, currentSize);
+		if (region == null || region.isEmpty()) return;
 
-		for (Point p : points) {
-			p2d.setLocation(p.x + .5, p.y + .5);
-			transform.transform(p2d, p2d);
-			g.drawOval((int) p2d.getX() - currentSize, (int) p2d.getY() - currentSize, 2 * currentSize + 1, 2 * currentSize + 1);
+		final Point2D p2d = new Point2D.Double();
+		final int cellSize = getAggregateCellSize(scale);
+		if (cellSize == 0) {
+			points.visitPoints(region, new MarkerIndex.Visitor() {
+
+				@Override
+				public void point(int x, int y) {
+					p2d.setLocation(x + .5, y + .5);
+					transform.transform(p2d, p2d);
+					g.drawOval((int) p2d.getX() - currentSize, (int) p2d.getY() - currentSize, 2 * currentSize + 1, 2 * currentSize + 1);
+				}
+
+				@Override
+				public void cell(int cellX, int cellY, int cellSize, int count) {}
+			});
+		} else {
+			/*
+			 * Entire cells fit into a screen pixel: choose the finest level whose cells are still at most one pixel wide,
+			 * and paint a marker for each of its cells.
+			 */
+			int level = Integer.numberOfTrailingZeros(cellSize / MarkerIndex.CELL_SIZE);
+			final Color[] fills = new Color[9];
+			for (int i = 0; i < fills.length; i++)
+				fills[i] = new Color(color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha() * (i + 1) / (fills.length + 1));
+			points.visitCells(region, level, new MarkerIndex.Visitor() {
+
+				@Override
+				public void point(int x, int y) {}
+
+				@Override
+				public void cell(int cellX, int cellY, int cellSize, int count) {
+					p2d.setLocation((cellX + .5) * cellSize, (cellY + .5) * cellSize);
+					transform.transform(p2d, p2d);
+					int x = (int) p2d.getX() - currentSize, y = (int) p2d.getY() - currentSize;
+					int density = Math.min(fills.length - 1, 31 - Integer.numberOfLeadingZeros(count));
+					g.setColor(fills[density]);
+					g.fillOval(x, y, 2 * currentSize + 1, 2 * currentSize + 1);
+					g.setColor(color);
+					g.drawOval(x, y, 2 * currentSize + 1, 2 * currentSize + 1);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the region of the image where markers can be visible, or {@code null} if no markers are visible.
+	 */
+	private static Rectangle getVisibleRegion(Graphics2D g, AffineTransform transform, int markerSize) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) return new Rectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		clip.grow(markerSize + 1, markerSize + 1);
+		Rectangle2D bounds;
+		try {
+			bounds = transform.createInverse().createTransformedShape(clip).getBounds2D();
+		} catch (NoninvertibleTransformException e) {
+			return null;
 		}
+		/* keep the region well inside the int range so that cell index computations cannot overflow */
+		double minX = Math.max(Integer.MIN_VALUE / 2, Math.floor(bounds.getMinX()));
+		double minY = Math.max(Integer.MIN_VALUE / 2, Math.floor(bounds.getMinY()));
+		double maxX = Math.min(Integer.MAX_VALUE / 2, Math.ceil(bounds.getMaxX()));
+		double maxY = Math.min(Integer.MAX_VALUE / 2, Math.ceil(bounds.getMaxY()));
+		return new Rectangle((int) minX, (int) minY, (int) (maxX - minX), (int) (maxY - minY));
 	}
 }
@@ -0,0 +1,190 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.swing.SwingUtilities;
+
+/**
+ * A status bar that displays statistics of the pixels in a square window around the cursor: the mean, standard
+ * deviation, minimum and maximum of each band. Like the {@link DefaultStatusBar}, it follows the mouse, and it can be
+ * synchronized with other status bars through {@link ImageViewerUtil#synchronizePixelInfoStatusBars}.
+ * <p>
+ * The mean and the standard deviation are computed in constant time from summed-area tables of the image, which are
+ * built in the background the first time the image is probed. Until the tables are ready, only the position is
+ * shown. The tables take 16 bytes per sample; they are discarded when a new image is set, and rebuilt when the
+ * contents of the image change through {@link ImageViewer#setImage(BufferedImage)} or
+ * {@link ImageViewer#imageUpdated(java.awt.Rectangle)}. The minimum and the maximum are found by scanning the window,
+ * so their cost grows with the window size.
+ * <p>
+ * For image sources other than {@link BufferedImageSource}, this status bar shows the value of the pixel like the
+ * {@code DefaultStatusBar}.
+ * @author Kazó Csaba
+ */
+public class RegionStatisticsStatusBar extends DefaultStatusBar {
+	private final int windowSize;
+	private final StringBuilder text=new StringBuilder(128);
+	private final Insets labelInsets=new Insets(0, 0, 0, 0);
+	private int[] samples=null;
+	private double[] floatSamples=null;
+	/* The summed-area table of tableImage, computed or being computed, or null. */
+	private Future<SummedAreaTable> table=null;
+	private BufferedImage tableImage=null;
+
+	private final Runnable tableReady=new Runnable() {
+
+		@Override
+		public void run() {
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+					update();
+				}
+			});
+		}
+	};
+
+	private final PropertyChangeListener imageListener=new PropertyChangeListener() {
+
+		@Override
+		public void propertyChange(PropertyChangeEvent evt) {
+			discardTable();
+		}
+	};
+
+	/**
+	 * Creates a new status bar.
+	 * @param windowSize the width and height of the window around the cursor, in pixels; an odd number centers the
+	 * window on the pixel under the cursor
+	 * @throws IllegalArgumentException if {@code windowSize} is not positive
+	 */
+	public RegionStatisticsStatusBar(int windowSize) {
+		if (windowSize<=0) throw new IllegalArgumentException("Window size must be positive");
+		this.windowSize=windowSize;
+	}
+
+	/**
+	 * Returns the size of the window around the cursor.
+	 * @return the width and height of the window in pixels
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	@Override
+	protected void updateLabel(BufferedImage image, int x, int y, int availableWidth) {
+		if (table==null || tableImage!=image) {
+			discardTable();
+			tableImage=image;
+			table=SummedAreaTable.compute(image, tableReady);
+		}
+		if (!table.isDone()) {
+			setText(x, y, "computing statistics");
+			return;
+		}
+		SummedAreaTable sums;
+		try {
+			sums=table.get();
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		} catch (ExecutionException e) {
+			// most likely the image was too large for the tables
+			setText(x, y, "statistics unavailable");
+			return;
+		}
+
+		int x0=Math.max(0, x-(windowSize-1)/2), y0=Math.max(0, y-(windowSize-1)/2);
+		int x1=Math.min(image.getWidth(), x-(windowSize-1)/2+windowSize), y1=Math.min(image.getHeight(), y-(windowSize-1)/2+windowSize);
+
+		format(image.getRaster(), sums, x, y, x0, y0, x1, y1, false);
+		if (availableWidth<getTextWidth()) format(image.getRaster(), sums, x, y, x0, y0, x1, y1, true);
+		String current=label.getText();
+		if (current==null || !current.contentEquals(text))
+			label.setText(text.toString());
+	}
+
+	/**
+	 * Drops the table of the previous image or of the previous contents of the image.
+	 */
+	private void discardTable() {
+		if (table!=null) table.cancel(false);
+		table=null;
+		tableImage=null;
+	}
+
+	@Override
+	protected void register(ImageViewer viewer) {
+		// registered before the listeners of the superclass, so that the table is discarded before the label is updated
+		viewer.addPropertyChangeListener("imageSource", imageListener);
+		viewer.addPropertyChangeListener("imageContents", imageListener);
+		super.register(viewer);
+	}
+
+	@Override
+	protected void unregister(ImageViewer viewer) {
+		super.unregister(viewer);
+		viewer.removePropertyChangeListener("imageSource", imageListener);
+		viewer.removePropertyChangeListener("imageContents", imageListener);
+		discardTable();
+	}
+
+	private void setText(int x, int y, String message) {
+		text.setLength(0);
+		text.append(x).append(", ").append(y).append("; ").append(message);
+		label.setText(text.toString());
+	}
+
+	private void format(WritableRaster raster, SummedAreaTable table, int x, int y, int x0, int y0, int x1, int y1, boolean shortFormat) {
+		int count=(x1-x0)*(y1-y0);
+		boolean floatingPoint=raster.getTransferType()==DataBuffer.TYPE_FLOAT || raster.getTransferType()==DataBuffer.TYPE_DOUBLE;
+		text.setLength(0);
+		text.append(x).append(", ").append(y);
+		if (!shortFormat) text.append("; ").append(x1-x0).append('x').append(y1-y0);
+		for (int b=0; b<table.getNumBands(); b++) {
+			double mean=table.sum(x0, y0, x1, y1, b)/count;
+			double sd=Math.sqrt(table.variance(x0, y0, x1, y1, b));
+			double min, max;
+			if (floatingPoint) {
+				if (floatSamples==null || floatSamples.length<count) floatSamples=new double[count];
+				raster.getSamples(x0, y0, x1-x0, y1-y0, b, floatSamples);
+				min=max=floatSamples[0];
+				for (int i=1; i<count; i++) {
+					if (floatSamples[i]<min) min=floatSamples[i];
+					if (floatSamples[i]>max) max=floatSamples[i];
+				}
+			} else {
+				if (samples==null || samples.length<count) samples=new int[count];
+				raster.getSamples(x0, y0, x1-x0, y1-y0, b, samples);
+				int intMin=samples[0], intMax=samples[0];
+				for (int i=1; i<count; i++) {
+					if (samples[i]<intMin) intMin=samples[i];
+					if (samples[i]>intMax) intMax=samples[i];
+				}
+				min=intMin;
+				max=intMax;
+			}
+			text.append(b==0 ? "; " : " | ");
+			if (shortFormat)
+				text.append(String.format("%.1f±%.1f", mean, sd));
+			else
+				text.append(String.format("mean %.2f, sd %.2f, min %s, max %s", mean, sd, formatValue(min, floatingPoint), formatValue(max, floatingPoint)));
+		}
+	}
+
+	private static String formatValue(double value, boolean floatingPoint) {
+		return floatingPoint ? String.format("%.3g", value) : Long.toString((long)value);
+	}
+
+	private int getTextWidth() {
+		FontMetrics metrics=label.getFontMetrics(label.getFont());
+		label.getInsets(labelInsets);
+		return metrics.stringWidth(text.toString())+labelInsets.left+labelInsets.right;
+	}
+}
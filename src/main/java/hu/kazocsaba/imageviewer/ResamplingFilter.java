@@ -0,0 +1,89 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.RenderingHints;
+
+/**
+ * High quality resampling filters that can be used as the interpolation type of the viewer, in addition to the
+ * {@code RenderingHints} constants. When the image is shrunk, these filters are applied by the viewer itself, using
+ * all available processor cores, and each displayed pixel is computed from all the image pixels that it covers.
+ * When the image is enlarged, or displayed at a custom zoom with tiles, the closest {@code RenderingHints}
+ * interpolation is used instead.
+ * @see ImageViewer#setInterpolationType(Object)
+ * @author Kazó Csaba
+ */
+public enum ResamplingFilter {
+	/**
+	 * Each displayed pixel is the average of the image pixels it covers, weighted by the covered area. This is the
+	 * fastest of the filters, and it does not sharpen the image.
+	 */
+	AREA_AVERAGE {
+		@Override
+		double getSupport() {
+			return .5;
+		}
+
+		@Override
+		double weight(double x) {
+			return x>=-.5 && x<.5 ? 1 : 0;
+		}
+
+		@Override
+		Object getRenderingHint() {
+			return RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+		}
+	},
+	/**
+	 * The bicubic filter with the parameter -0.5 (Catmull-Rom spline).
+	 */
+	BICUBIC {
+		@Override
+		double getSupport() {
+			return 2;
+		}
+
+		@Override
+		double weight(double x) {
+			x=Math.abs(x);
+			if (x<1) return (1.5*x-2.5)*x*x+1;
+			if (x<2) return ((-.5*x+2.5)*x-4)*x+2;
+			return 0;
+		}
+
+		@Override
+		Object getRenderingHint() {
+			return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+		}
+	},
+	/**
+	 * The Lanczos filter with three lobes. It gives the sharpest results, but it is also the slowest, and it can
+	 * produce slight ringing near sharp edges.
+	 */
+	LANCZOS {
+		@Override
+		double getSupport() {
+			return 3;
+		}
+
+		@Override
+		double weight(double x) {
+			if (x==0) return 1;
+			if (x<=-3 || x>=3) return 0;
+			double px=Math.PI*x;
+			return 3*Math.sin(px)*Math.sin(px/3)/(px*px);
+		}
+
+		@Override
+		Object getRenderingHint() {
+			return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+		}
+	};
+
+	/** Returns the radius of the filter, in destination pixels. */
+	abstract double getSupport();
+
+	/** Returns the unnormalized weight of a source at the specified distance, in destination pixels. */
+	abstract double weight(double x);
+
+	/** Returns the interpolation hint to use when the filter cannot be applied. */
+	abstract Object getRenderingHint();
+}
@@ -0,0 +1,159 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Summed-area tables of the samples and the squared samples of an image, allowing the sum and the sum of squares of
+ * any rectangular region to be computed in constant time.
+ * <p>
+ * Integer samples are summed exactly in {@code long} values; floating point samples are summed as {@code double}s.
+ * The tables need 16 bytes per sample of the image.
+ * @author Kazó Csaba
+ */
+class SummedAreaTable {
+	private static ExecutorService executor;
+
+	private final int width, height, bands;
+	/* For each band, the value at (x,y) is the sum over the pixels with smaller coordinates; the arrays have (width+1)*(height+1) elements. */
+	private final long[][] sums, squareSums;
+	private final double[][] floatSums, floatSquareSums;
+
+	/**
+	 * Computes the tables for a raster.
+	 * @throws IllegalArgumentException if the raster is too large
+	 */
+	public SummedAreaTable(Raster raster) {
+		width=raster.getWidth();
+		height=raster.getHeight();
+		bands=raster.getNumBands();
+		if ((long)(width+1)*(height+1)>Integer.MAX_VALUE) throw new IllegalArgumentException("Image too large");
+		int stride=width+1;
+		int dataType=raster.getTransferType();
+		if (dataType==DataBuffer.TYPE_FLOAT || dataType==DataBuffer.TYPE_DOUBLE) {
+			sums=squareSums=null;
+			floatSums=new double[bands][stride*(height+1)];
+			floatSquareSums=new double[bands][stride*(height+1)];
+			double[] row=new double[width];
+			for (int b=0; b<bands; b++) {
+				double[] s=floatSums[b], q=floatSquareSums[b];
+				for (int y=0; y<height; y++) {
+					raster.getSamples(raster.getMinX(), raster.getMinY()+y, width, 1, b, row);
+					double rowSum=0, rowSquareSum=0;
+					for (int x=0; x<width; x++) {
+						rowSum+=row[x];
+						rowSquareSum+=row[x]*row[x];
+						s[(y+1)*stride+x+1]=s[y*stride+x+1]+rowSum;
+						q[(y+1)*stride+x+1]=q[y*stride+x+1]+rowSquareSum;
+					}
+				}
+			}
+		} else {
+			floatSums=floatSquareSums=null;
+			sums=new long[bands][stride*(height+1)];
+			squareSums=new long[bands][stride*(height+1)];
+			int[] row=new int[width];
+			for (int b=0; b<bands; b++) {
+				long[] s=sums[b], q=squareSums[b];
+				for (int y=0; y<height; y++) {
+					raster.getSamples(raster.getMinX(), raster.getMinY()+y, width, 1, b, row);
+					long rowSum=0, rowSquareSum=0;
+					for (int x=0; x<width; x++) {
+						// samples are unsigned, except for TYPE_SHORT and TYPE_INT
+						long value=row[x];
+						rowSum+=value;
+						rowSquareSum+=value*value;
+						s[(y+1)*stride+x+1]=s[y*stride+x+1]+rowSum;
+						q[(y+1)*stride+x+1]=q[y*stride+x+1]+rowSquareSum;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the table of an image in the background. The tables are not cached: the caller is responsible for
+	 * keeping the result as long as the contents of the image stay the same.
+	 * @param image the image
+	 * @param whenDone the task to run on the background thread after the table has been computed, or {@code null}
+	 * @return the future result
+	 */
+	public static synchronized Future<SummedAreaTable> compute(final BufferedImage image, Runnable whenDone) {
+		if (executor==null)
+			executor=Executors.newSingleThreadExecutor(new DaemonThreadFactory("ImageViewer-statistics"));
+		Future<SummedAreaTable> table=executor.submit(new Callable<SummedAreaTable>() {
+
+			@Override
+			public SummedAreaTable call() {
+				return new SummedAreaTable(image.getRaster());
+			}
+		});
+		// the executor is single threaded, so this runs after the table is computed, or after it has been cancelled
+		if (whenDone!=null) executor.execute(whenDone);
+		return table;
+	}
+
+	/** Returns the number of bands. */
+	public int getNumBands() {
+		return bands;
+	}
+
+	/**
+	 * Returns the sum of the samples in a region.
+	 * @param x0 the left edge of the region
+	 * @param y0 the top edge of the region
+	 * @param x1 the right edge of the region, exclusive
+	 * @param y1 the bottom edge of the region, exclusive
+	 * @param band the band
+	 * @return the sum of the samples
+	 */
+	public double sum(int x0, int y0, int x1, int y1, int band) {
+		return sums!=null ? query(sums[band], x0, y0, x1, y1) : query(floatSums[band], x0, y0, x1, y1);
+	}
+
+	/**
+	 * Returns the sum of the squared samples in a region.
+	 * @param x0 the left edge of the region
+	 * @param y0 the top edge of the region
+	 * @param x1 the right edge of the region, exclusive
+	 * @param y1 the bottom edge of the region, exclusive
+	 * @param band the band
+	 * @return the sum of the squared samples
+	 */
+	public double squareSum(int x0, int y0, int x1, int y1, int band) {
+		return squareSums!=null ? query(squareSums[band], x0, y0, x1, y1) : query(floatSquareSums[band], x0, y0, x1, y1);
+	}
+
+	/**
+	 * Returns the variance of the samples in a region. For integer samples the result is exact up to the final
+	 * division.
+	 */
+	public double variance(int x0, int y0, int x1, int y1, int band) {
+		long count=(long)(x1-x0)*(y1-y0);
+		if (sums!=null) {
+			// count*squareSum-sum^2 could overflow a long, so it is computed in double after the exact sums
+			long sum=query(sums[band], x0, y0, x1, y1);
+			long squareSum=query(squareSums[band], x0, y0, x1, y1);
+			double mean=sum/(double)count;
+			return Math.max(0, squareSum/(double)count-mean*mean);
+		} else {
+			double mean=query(floatSums[band], x0, y0, x1, y1)/count;
+			return Math.max(0, query(floatSquareSums[band], x0, y0, x1, y1)/count-mean*mean);
+		}
+	}
+
+	private long query(long[] table, int x0, int y0, int x1, int y1) {
+		int stride=width+1;
+		return table[y1*stride+x1]-table[y0*stride+x1]-table[y1*stride+x0]+table[y0*stride+x0];
+	}
+
+	private double query(double[] table, int x0, int y0, int x1, int y1) {
+		int stride=width+1;
+		return table[y1*stride+x1]-table[y0*stride+x1]-table[y1*stride+x0]+table[y0*stride+x0];
+	}
+}
@@ -0,0 +1,21 @@
+package hu.kazocsaba.imageviewer;
+
+/**
+ * Determines how synchronized viewers share their view of the image.
+ * @author Kazó Csaba
+ * @see ImageViewerUtil#setSynchronizationMode(ImageViewer, SynchronizationMode)
+ */
+public enum SynchronizationMode {
+	/**
+	 * The viewers have the same scroll bar positions and zoom factor. This is appropriate if the viewers display
+	 * images of the same size.
+	 */
+	SCROLL_POSITION,
+	/**
+	 * The viewers show the same part of their images, relative to the image size. The view centers correspond to the
+	 * same point in normalized image coordinates, and the custom zoom factor of each viewer is scaled by the ratio of
+	 * the image widths, so the images are displayed with the same width. This allows comparing images of different
+	 * resolutions, for example a full resolution image and a smaller depth map of the same scene.
+	 */
+	IMAGE_SPACE
+}
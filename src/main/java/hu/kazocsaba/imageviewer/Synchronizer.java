@@ -1,9 +1,21 @@
 package hu.kazocsaba.imageviewer;
 
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
+import javax.swing.BoundedRangeModel;
 import javax.swing.JComponent;
+import javax.swing.JViewport;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -31,10 +43,17 @@ import javax.swing.event.ChangeListener;
  * it to deny rescrolling to all the other viewers, and to disable scroll synchronization. Then, when the originator finishes the rescroll, it
  * notifies the synchronizer that the operation is complete using the {@link #doneRescrolling(ImageViewer)} function. At this point the
  * synchronizer adjusts the scroll panes of the other viewers to match the originator.
+ * 
+ * While the leader is set, the other viewers do not validate their component hierarchy after a size change; they
+ * only register their validate roots with {@link #deferValidation(ImageViewer, Container)}. The leader validates its
+ * own root, which is usually shared by the whole group, and the remaining roots are validated once in
+ * {@code doneRescrolling}. This way changing the zoom of a large group needs a single layout pass instead of one per
+ * viewer.
  * @author Kazó Csaba
  */
 class Synchronizer {
 	private final WeakHashMap<ImageViewer, Void> viewers=new WeakHashMap<ImageViewer, Void>(4);
+	private SynchronizationMode mode=SynchronizationMode.SCROLL_POSITION;
 	
 	/*
 	 * If there is currently a synchronization update taking place, the viewer which initiated the change is stored
@@ -42,6 +61,12 @@ class Synchronizer {
 	 */
 	private ImageViewer leader=null;
 	
+	/* The validate roots of the viewers which are waiting for the leader to finish. */
+	private final Set<Container> pendingRoots=new LinkedHashSet<Container>();
+	
+	/* Maps the scroll bar models to their viewers, to find the source of scroll events. */
+	private final WeakHashMap<BoundedRangeModel, WeakReference<ImageViewer>> scrollModels=new WeakHashMap<BoundedRangeModel, WeakReference<ImageViewer>>(8);
+	
 	private final ChangeListener scrollChangeListener=new ChangeListener() {
 		boolean adjusting=false;
 		@Override
@@ -54,17 +79,13 @@ class Synchronizer {
 				// also ignore changes that our adjustments cause
 				return;
 			}
-			ImageViewer source=null;
-			for (ImageViewer viewer: viewers.keySet()) {
-				if (viewer.getScrollPane().getHorizontalScrollBar().getModel()==e.getSource() || viewer.getScrollPane().getVerticalScrollBar().getModel()==e.getSource()) {
-					source=viewer;
-					break;
-				}
-			}
+			WeakReference<ImageViewer> sourceReference=scrollModels.get((BoundedRangeModel)e.getSource());
+			ImageViewer source=sourceReference==null ? null : sourceReference.get();
 			if (source==null) throw new AssertionError("Couldn't find the source of the scroll bar change event");
 			adjusting=true;
+			Point2D center=mode==SynchronizationMode.IMAGE_SPACE ? getNormalizedCenter(source) : null;
 			for (ImageViewer viewer: viewers.keySet()) {
-				updateScroll(viewer, source);
+				updateScroll(viewer, source, center);
 			}
 			adjusting=false;
 		}
@@ -72,11 +93,25 @@ class Synchronizer {
 	
 	public Synchronizer(ImageViewer viewer) {
 		viewers.put(viewer, null);
-		viewer.getScrollPane().getHorizontalScrollBar().getModel().addChangeListener(scrollChangeListener);
-		viewer.getScrollPane().getVerticalScrollBar().getModel().addChangeListener(scrollChangeListener);
+		listenToScrolling(viewer);
 	}
-	private void updateScroll(ImageViewer viewer, ImageViewer reference) {
+	private void listenToScrolling(ImageViewer viewer) {
+		WeakReference<ImageViewer> reference=new WeakReference<ImageViewer>(viewer);
+		BoundedRangeModel horizontal=viewer.getScrollPane().getHorizontalScrollBar().getModel();
+		BoundedRangeModel vertical=viewer.getScrollPane().getVerticalScrollBar().getModel();
+		scrollModels.put(horizontal, reference);
+		scrollModels.put(vertical, reference);
+		horizontal.addChangeListener(scrollChangeListener);
+		vertical.addChangeListener(scrollChangeListener);
+	}
+	/**
+	 * Matches the view of a viewer to the reference viewer.
+	 * @param center the normalized view center of the reference in image space mode, or {@code null} to copy the
+	 * scroll positions
+	 */
+	private void updateScroll(ImageViewer viewer, ImageViewer reference, Point2D center) {
 		if (reference==viewer) return;
+		if (center!=null && setNormalizedCenter(viewer, center)) return;
 		/*
 		 * Note that this method may be called during a resize, before the viewport has had a chance to reshape itself
 		 * so we cannot rely on the view rectangle.
@@ -85,6 +120,79 @@ class Synchronizer {
 		viewer.getScrollPane().getVerticalScrollBar().getModel().setValue(reference.getScrollPane().getVerticalScrollBar().getModel().getValue());
 	}
 	
+	/**
+	 * Returns the center of the view of the viewer in image coordinates divided by the image size, or {@code null} if
+	 * the viewer does not display an image.
+	 */
+	private static Point2D getNormalizedCenter(ImageViewer viewer) {
+		ImageSource source=viewer.getImageSource();
+		if (source==null || !viewer.getScrollPane().getViewport().getView().isShowing()) return null;
+		Rectangle viewRect=viewer.getScrollPane().getViewport().getViewRect();
+		Point2D center=new Point2D.Double(viewRect.getCenterX(), viewRect.getCenterY());
+		try {
+			viewer.getImageTransform().inverseTransform(center, center);
+		} catch (IllegalStateException e) {
+			// the viewer has no size
+			return null;
+		} catch (NoninvertibleTransformException e) {
+			throw new Error(e);
+		}
+		center.setLocation(center.getX()/source.getWidth(), center.getY()/source.getHeight());
+		return center;
+	}
+	
+	/**
+	 * Scrolls the viewer so that the specified normalized image point is in the center of the view, or as close as
+	 * possible.
+	 * @return {@code false} if the viewer does not display an image, and could not be scrolled
+	 */
+	private static boolean setNormalizedCenter(ImageViewer viewer, Point2D center) {
+		ImageSource source=viewer.getImageSource();
+		if (source==null || !viewer.getScrollPane().getViewport().getView().isShowing()) return false;
+		AffineTransform transform;
+		try {
+			transform=viewer.getImageTransform();
+		} catch (IllegalStateException e) {
+			return false;
+		}
+		JViewport viewport=viewer.getScrollPane().getViewport();
+		Dimension extent=viewport.getExtentSize();
+		Dimension viewSize=viewport.getViewSize();
+		Point2D p=transform.transform(new Point2D.Double(center.getX()*source.getWidth(), center.getY()*source.getHeight()), null);
+		int x=(int)Math.round(p.getX()-extent.width/2.0);
+		int y=(int)Math.round(p.getY()-extent.height/2.0);
+		x=Math.max(0, Math.min(x, viewSize.width-extent.width));
+		y=Math.max(0, Math.min(y, viewSize.height-extent.height));
+		viewport.setViewPosition(new Point(x, y));
+		return true;
+	}
+	
+	/**
+	 * Returns the zoom factor that the viewer should use to match the reference viewer.
+	 */
+	private double getMatchingZoomFactor(ImageViewer viewer, ImageViewer reference) {
+		if (mode==SynchronizationMode.IMAGE_SPACE && viewer.getImageSource()!=null && reference.getImageSource()!=null)
+			return reference.getZoomFactor()*reference.getImageSource().getWidth()/viewer.getImageSource().getWidth();
+		else
+			return reference.getZoomFactor();
+	}
+	
+	public SynchronizationMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Sets the synchronization mode, and matches the views of the other viewers to the specified one.
+	 */
+	public void setMode(SynchronizationMode mode, ImageViewer reference) {
+		if (mode==null) throw new NullPointerException();
+		this.mode=mode;
+		leader=reference;
+		for (ImageViewer viewer: viewers.keySet())
+			if (viewer!=reference) viewer.setZoomFactor(getMatchingZoomFactor(viewer, reference));
+		doneRescrolling(reference);
+	}
+	
 	public void add(ImageViewer viewer) {
 		if (viewer.getSynchronizer()==this) return;
 		ImageViewer referenceViewer=viewers.keySet().iterator().next();
@@ -96,20 +204,23 @@ class Synchronizer {
 			viewers.put(otherViewer, null);
 			otherViewer.setStatusBarVisible(referenceViewer.isStatusBarVisible());
 			otherViewer.setResizeStrategy(referenceViewer.getResizeStrategy());
-			otherViewer.setZoomFactor(referenceViewer.getZoomFactor());
+			otherViewer.setZoomFactor(getMatchingZoomFactor(otherViewer, referenceViewer));
 			otherViewer.setPixelatedZoom(referenceViewer.isPixelatedZoom());
 			otherViewer.setInterpolationType(referenceViewer.getInterpolationType());
 			
-			updateScroll(otherViewer, referenceViewer);
-			otherViewer.getScrollPane().getHorizontalScrollBar().getModel().addChangeListener(scrollChangeListener);
-			otherViewer.getScrollPane().getVerticalScrollBar().getModel().addChangeListener(scrollChangeListener);
+			updateScroll(otherViewer, referenceViewer, mode==SynchronizationMode.IMAGE_SPACE ? getNormalizedCenter(referenceViewer) : null);
+			listenToScrolling(otherViewer);
 		}
 	}
 	
 	public void remove(ImageViewer viewer) {
 		viewers.remove(viewer);
-		viewer.getScrollPane().getHorizontalScrollBar().getModel().removeChangeListener(scrollChangeListener);
-		viewer.getScrollPane().getVerticalScrollBar().getModel().removeChangeListener(scrollChangeListener);
+		BoundedRangeModel horizontal=viewer.getScrollPane().getHorizontalScrollBar().getModel();
+		BoundedRangeModel vertical=viewer.getScrollPane().getVerticalScrollBar().getModel();
+		scrollModels.remove(horizontal);
+		scrollModels.remove(vertical);
+		horizontal.removeChangeListener(scrollChangeListener);
+		vertical.removeChangeListener(scrollChangeListener);
 	}
 	
 	
@@ -130,15 +241,37 @@ class Synchronizer {
 		}
 		leader=source;
 		for (ImageViewer viewer: viewers.keySet())
-			viewer.setZoomFactor(source.getZoomFactor());
+			if (viewer!=source) viewer.setZoomFactor(getMatchingZoomFactor(viewer, source));
+		return true;
+	}
+	/**
+	 * Called by a viewer that needs its validate root to be validated. If the viewer follows a change initiated in
+	 * another viewer, the validation is postponed until the leader has finished.
+	 * @return {@code true} if the validation has been deferred, {@code false} if the viewer should validate the root
+	 * itself
+	 */
+	boolean deferValidation(ImageViewer viewer, Container root) {
+		if (leader==null || leader==viewer) return false;
+		pendingRoots.add(root);
 		return true;
 	}
 	void doneRescrolling(ImageViewer source) {
 		if (leader!=source) throw new AssertionError();
-		for (ImageViewer otherViewer: viewers.keySet()) {
-			if (otherViewer!=leader) {
-				((JComponent)otherViewer.getScrollPane().getViewport().getView()).scrollRectToVisible(leader.getScrollPane().getViewport().getViewRect());
-				updateScroll(otherViewer, leader);
+		// the followers must be laid out before their scroll positions can be adjusted
+		for (Container root: pendingRoots)
+			root.validate();
+		pendingRoots.clear();
+		if (mode==SynchronizationMode.IMAGE_SPACE) {
+			// the view center of the leader is only computed once
+			Point2D center=getNormalizedCenter(leader);
+			for (ImageViewer otherViewer: viewers.keySet())
+				updateScroll(otherViewer, leader, center);
+		} else {
+			for (ImageViewer otherViewer: viewers.keySet()) {
+				if (otherViewer!=leader) {
+					((JComponent)otherViewer.getScrollPane().getViewport().getView()).scrollRectToVisible(leader.getScrollPane().getViewport().getViewRect());
+					updateScroll(otherViewer, leader, null);
+				}
 			}
 		}
 		leader=null;
@@ -0,0 +1,168 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of rendered image tiles. When it is full, adding a new tile evicts the one that was used least
+ * recently. The capacity follows the number of tiles visible at once, so it grows with the size of the viewer and
+ * shrinks again when the viewer gets smaller.
+ * <p>
+ * Tiles are square regions of the transformed image in the component coordinate system. The tile grid is anchored at
+ * the (rounded down) position of the top left corner of the image, so scrolling and recentering the image do not
+ * change the contents of the tiles.
+ * @author Kazó Csaba
+ */
+class TileCache {
+	/** The width and height of a tile in pixels. */
+	public static final int TILE_SIZE=256;
+
+	private static final int MINIMUM_CAPACITY=64;
+
+	private int capacity=MINIMUM_CAPACITY;
+	private long cachedBytes=0;
+
+	private final Map<Key, BufferedImage> tiles=new LinkedHashMap<Key, BufferedImage>(16, .75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+			if (size()<=capacity) return false;
+			cachedBytes-=FrameCache.sizeOf(eldest.getValue());
+			return true;
+		}
+
+	};
+
+	/**
+	 * Identifies a rendered tile.
+	 */
+	static final class Key {
+		private final int column, row;
+		private final double scale, offsetX, offsetY;
+		private final Object interpolation;
+
+		/**
+		 * Creates a new tile key.
+		 * @param column the column of the tile in the grid
+		 * @param row the row of the tile in the grid
+		 * @param scale the scale of the image
+		 * @param offsetX the fractional part of the x coordinate of the image origin
+		 * @param offsetY the fractional part of the y coordinate of the image origin
+		 * @param interpolation the interpolation type used to render the tile
+		 */
+		public Key(int column, int row, double scale, double offsetX, double offsetY, Object interpolation) {
+			this.column = column;
+			this.row = row;
+			this.scale = scale;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			this.interpolation = interpolation;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other=(Key)obj;
+			return column==other.column && row==other.row && scale==other.scale &&
+					offsetX==other.offsetX && offsetY==other.offsetY && interpolation==other.interpolation;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits=Double.doubleToLongBits(scale)+31*Double.doubleToLongBits(offsetX)+961*Double.doubleToLongBits(offsetY);
+			return ((column*31+row)*31+(int)(bits^(bits>>>32)))*31+System.identityHashCode(interpolation);
+		}
+	}
+
+	/**
+	 * Returns the tile associated with the key, or {@code null} if it is not in the cache.
+	 * @param key the key of the tile
+	 * @return the cached tile, or {@code null}
+	 */
+	public BufferedImage get(Key key) {
+		return tiles.get(key);
+	}
+
+	/**
+	 * Adds a tile to the cache.
+	 * @param key the key of the tile
+	 * @param tile the rendered tile
+	 */
+	public void put(Key key, BufferedImage tile) {
+		// the put can evict a tile, which updates cachedBytes, so it must complete before cachedBytes is read here
+		BufferedImage old=tiles.put(key, tile);
+		cachedBytes+=FrameCache.sizeOf(tile)-FrameCache.sizeOf(old);
+	}
+
+	/**
+	 * Sets the number of tiles visible at once. The cache holds twice as many tiles, but at least 64, so that painting
+	 * does not keep evicting tiles that are needed, and there is room for the tiles around the visible area. If the
+	 * capacity decreases, the least recently used tiles are evicted.
+	 * @param tileCount the number of tiles needed by a single paint operation
+	 */
+	public void setVisibleTileCount(int tileCount) {
+		capacity=Math.max(MINIMUM_CAPACITY, 2*tileCount);
+		for (Iterator<BufferedImage> it=tiles.values().iterator(); tiles.size()>capacity && it.hasNext();) {
+			cachedBytes-=FrameCache.sizeOf(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of tiles held by the cache.
+	 * @return the capacity of the cache
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of tiles in the cache.
+	 * @return the number of cached tiles
+	 */
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	/**
+	 * Removes the tiles that show a region of the image. The tiles of every scale are checked.
+	 * @param imageRegion the region of the image, in image pixel coordinates
+	 * @param margin the number of pixels around the region, in component coordinates, that can also be affected by
+	 * the change because of interpolation
+	 */
+	public void invalidate(Rectangle imageRegion, int margin) {
+		for (Iterator<Map.Entry<Key, BufferedImage>> it=tiles.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Key, BufferedImage> entry=it.next();
+			Key key=entry.getKey();
+			// the region relative to the tile grid
+			int x0=(int)Math.floor(key.offsetX+imageRegion.x*key.scale)-margin;
+			int y0=(int)Math.floor(key.offsetY+imageRegion.y*key.scale)-margin;
+			int x1=(int)Math.ceil(key.offsetX+(imageRegion.x+imageRegion.width)*key.scale)+margin;
+			int y1=(int)Math.ceil(key.offsetY+(imageRegion.y+imageRegion.height)*key.scale)+margin;
+			int tileX=key.column*TILE_SIZE, tileY=key.row*TILE_SIZE;
+			if (x0<tileX+TILE_SIZE && x1>tileX && y0<tileY+TILE_SIZE && y1>tileY) {
+				cachedBytes-=FrameCache.sizeOf(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all tiles from the cache.
+	 */
+	public void clear() {
+		tiles.clear();
+		cachedBytes=0;
+	}
+
+	/**
+	 * Returns the memory used by the cached tiles.
+	 * @return the total size of the tiles in bytes
+	 */
+	public long getCachedBytes() {
+		return cachedBytes;
+	}
+}
@@ -0,0 +1,159 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static hu.kazocsaba.imageviewer.ViewerTestUtil.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class BackgroundRescalingTest {
+
+	private static BufferedImage createImage(long seed) {
+		return createRandomImage(400, 300, BufferedImage.TYPE_INT_RGB, seed);
+	}
+
+	private static ImageComponent createComponent(BufferedImage image, boolean backgroundRescaling) {
+		ImageComponent component=ViewerTestUtil.createComponent();
+		component.setInterpolationType(RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		component.setBackgroundRescaling(backgroundRescaling);
+		component.setImage(image);
+		component.setSize(130, 90);
+		component.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+		return component;
+	}
+
+	/** Paints a copy of the image the way a viewer without background rescaling does. */
+	private static BufferedImage paintFinal(BufferedImage image) {
+		return paint(createComponent(copy(image), false));
+	}
+
+	/** Paints a copy of the image the way a viewer with background rescaling does before the job finishes. */
+	private static BufferedImage paintApproximation(BufferedImage image) {
+		return paint(createComponent(copy(image), true));
+	}
+
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy=new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+		copy.setData(image.getData());
+		return copy;
+	}
+
+	private static boolean imageEquals(BufferedImage a, BufferedImage b) {
+		for (int y=0; y<a.getHeight(); y++)
+			for (int x=0; x<a.getWidth(); x++)
+				if (a.getRGB(x, y)!=b.getRGB(x, y)) return false;
+		return true;
+	}
+
+	@Test
+	public void approximationIsReplaced() throws Exception {
+		final BufferedImage image=createImage(1);
+		final ImageComponent component=createComponent(image, true);
+		BufferedImage approximation=onEventThread(new Callable<BufferedImage>() {
+
+			@Override
+			public BufferedImage call() {
+				return paint(component);
+			}
+		});
+		waitForRescaleExecutor();
+		BufferedImage result=onEventThread(new Callable<BufferedImage>() {
+
+			@Override
+			public BufferedImage call() {
+				return paint(component);
+			}
+		});
+		BufferedImage expected=paintFinal(image);
+		assertFalse("the approximation should differ from the final image", imageEquals(expected, approximation));
+		assertImageEquals("final image", expected, result);
+	}
+
+	@Test
+	public void lateResultIsDiscarded() throws Exception {
+		final BufferedImage image=createImage(2);
+		final BufferedImage otherImage=createImage(3);
+		final ImageComponent component=createComponent(image, true);
+		final CountDownLatch[] latch=new CountDownLatch[1];
+		try {
+			BufferedImage approximation=onEventThread(new Callable<BufferedImage>() {
+
+				@Override
+				public BufferedImage call() throws Exception {
+					paint(component);
+					// the job finishes, but its result can only be delivered after this method returns
+					ImageComponent.getRescaleExecutor().submit(NOTHING).get();
+					latch[0]=blockRescaling();
+					component.setImage(otherImage);
+					return paint(component);
+				}
+			});
+			// the result for the first image is delivered now, while the job for the other image is still pending
+			SwingUtilities.invokeAndWait(NOTHING);
+			BufferedImage result=onEventThread(new Callable<BufferedImage>() {
+
+				@Override
+				public BufferedImage call() {
+					return paint(component);
+				}
+			});
+			assertImageEquals("approximation", paintApproximation(otherImage), approximation);
+			assertImageEquals("after the late result", approximation, result);
+		} finally {
+			if (latch[0]!=null) latch[0].countDown();
+		}
+		waitForRescaleExecutor();
+		BufferedImage result=onEventThread(new Callable<BufferedImage>() {
+
+			@Override
+			public BufferedImage call() {
+				return paint(component);
+			}
+		});
+		assertImageEquals("final image", paintFinal(otherImage), result);
+	}
+
+	@Test
+	public void imageUpdatedDuringJobRedrawsEverything() throws Exception {
+		final BufferedImage image=createImage(4);
+		final ImageComponent component=createComponent(image, true);
+		final Rectangle region=new Rectangle(150, 100, 40, 30);
+		CountDownLatch latch=blockRescaling();
+		try {
+			BufferedImage result=onEventThread(new Callable<BufferedImage>() {
+
+				@Override
+				public BufferedImage call() {
+					paint(component);
+					Random random=new Random(5);
+					for (int y=region.y; y<region.y+region.height; y++)
+						for (int x=region.x; x<region.x+region.width; x++)
+							image.setRGB(x, y, random.nextInt());
+					component.imageUpdated(region);
+					return paint(component);
+				}
+			});
+			assertImageEquals("approximation", paintApproximation(image), result);
+		} finally {
+			latch.countDown();
+		}
+		waitForRescaleExecutor();
+		BufferedImage result=onEventThread(new Callable<BufferedImage>() {
+
+			@Override
+			public BufferedImage call() {
+				return paint(component);
+			}
+		});
+		assertImageEquals("final image", paintFinal(image), result);
+	}
+}
@@ -0,0 +1,34 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class BufferedImageSourceTest {
+	@Test
+	public void testReadRegion() {
+		BufferedImage image=new BufferedImage(10, 7, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.getRaster().setSample(x, y, 0, 10*y+x);
+		BufferedImageSource source=new BufferedImageSource(image);
+		
+		BufferedImage full=source.readRegion(2, 1, 3, 4, 1);
+		assertEquals(3, full.getWidth());
+		assertEquals(4, full.getHeight());
+		assertEquals(12, full.getRaster().getSample(0, 0, 0));
+		assertEquals(44, full.getRaster().getSample(2, 3, 0));
+		
+		BufferedImage reduced=source.readRegion(1, 2, 9, 5, 4);
+		assertEquals(BufferedImage.TYPE_BYTE_GRAY, reduced.getType());
+		assertEquals(3, reduced.getWidth());
+		assertEquals(2, reduced.getHeight());
+		assertEquals(21, reduced.getRaster().getSample(0, 0, 0));
+		assertEquals(29, reduced.getRaster().getSample(2, 0, 0));
+		assertEquals(65, reduced.getRaster().getSample(1, 1, 0));
+	}
+}
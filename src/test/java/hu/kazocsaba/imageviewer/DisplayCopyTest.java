@@ -0,0 +1,101 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static hu.kazocsaba.imageviewer.ViewerTestUtil.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class DisplayCopyTest {
+
+	/* Without a screen the display format is TYPE_INT_RGB, so an image in another format is copied. */
+	private static BufferedImage createImage(long seed) {
+		return createRandomImage(200, 150, BufferedImage.TYPE_3BYTE_BGR, seed);
+	}
+
+	private static ImageComponent createComponent(BufferedImage image, Object interpolation, double zoom) {
+		ImageComponent component=ViewerTestUtil.createComponent();
+		component.setInterpolationType(interpolation);
+		component.setImage(image);
+		component.setSize(250, 180);
+		component.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		component.setZoomFactor(zoom);
+		return component;
+	}
+
+	@Test
+	public void copyPaintsLikeOriginal() throws Exception {
+		final BufferedImage image=createImage(1);
+		// both the direct path (enlarging) and the cached path (shrinking)
+		for (final double zoom: new double[] {1.3, .6}) {
+			final ImageComponent component=onEventThread(new Callable<ImageComponent>() {
+
+				@Override
+				public ImageComponent call() {
+					ImageComponent component=createComponent(image, RenderingHints.VALUE_INTERPOLATION_BILINEAR, zoom);
+					component.setDisplayCopyEnabled(true);
+					return component;
+				}
+			});
+			waitForRescaleExecutor();
+			onEventThread(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					assertNotNull(component.getDisplayCopy());
+					assertEquals(BufferedImage.TYPE_INT_RGB, component.getDisplayCopy().getType());
+					assertSame(image, component.getImage());
+					BufferedImage expected=paint(createComponent(image, RenderingHints.VALUE_INTERPOLATION_BILINEAR, zoom));
+					assertImageEquals("zoom "+zoom, expected, paint(component));
+					return null;
+				}
+			});
+		}
+	}
+
+	@Test
+	public void updateDuringCopyIsReplayed() throws Exception {
+		final BufferedImage image=createImage(2);
+		final ImageComponent component=createComponent(image, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, 1);
+		final Rectangle region=new Rectangle(60, 40, 30, 20);
+		onEventThread(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				component.setDisplayCopyEnabled(true);
+				// the copy is made, but it can only be installed after this method returns
+				ImageComponent.getRescaleExecutor().submit(NOTHING).get();
+				assertNull(component.getDisplayCopy());
+				Random random=new Random(3);
+				for (int y=region.y; y<region.y+region.height; y++)
+					for (int x=region.x; x<region.x+region.width; x++)
+						image.setRGB(x, y, random.nextInt());
+				component.imageUpdated(region);
+				return null;
+			}
+		});
+		SwingUtilities.invokeAndWait(NOTHING);
+		onEventThread(new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				BufferedImage copy=component.getDisplayCopy();
+				assertNotNull(copy);
+				for (int y=0; y<image.getHeight(); y++)
+					for (int x=0; x<image.getWidth(); x++)
+						assertEquals(x+","+y, image.getRGB(x, y), copy.getRGB(x, y));
+				BufferedImage expected=paint(createComponent(image, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, 1));
+				assertImageEquals("painted", expected, paint(component));
+				return null;
+			}
+		});
+	}
+}
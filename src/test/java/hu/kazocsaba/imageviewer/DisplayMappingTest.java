@@ -0,0 +1,83 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class DisplayMappingTest {
+	private static BufferedImage createUShortImage(int width, int height) {
+		BufferedImage image=new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+		WritableRaster raster=image.getRaster();
+		for (int y=0; y<height; y++)
+			for (int x=0; x<width; x++)
+				raster.setSample(x, y, 0, (x*1000+y*7)&0xffff);
+		return image;
+	}
+
+	@Test
+	public void testWindow() {
+		BufferedImage image=createUShortImage(40, 30);
+		DisplayMapping mapping=new DisplayMapping(2000, 2000);
+		BufferedImage mapped=mapping.apply(image, 0, 0, 40, 30, 1);
+		assertEquals(BufferedImage.TYPE_BYTE_GRAY, mapped.getType());
+		for (int y=0; y<30; y++)
+			for (int x=0; x<40; x++) {
+				int sample=image.getRaster().getSample(x, y, 0);
+				double expected=Math.min(1, Math.max(0, (sample-1000)/2000.0))*255;
+				assertEquals(expected, mapped.getRaster().getSample(x, y, 0), 1);
+			}
+	}
+
+	@Test
+	public void testRegionAndSubsample() {
+		BufferedImage image=createUShortImage(40, 30);
+		DisplayMapping mapping=new DisplayMapping(20000, 40000, 2, null);
+		BufferedImage full=mapping.apply(image, 0, 0, 40, 30, 1);
+		BufferedImage region=mapping.apply(image.getSubimage(5, 3, 30, 20), 2, 1, 25, 17, 4);
+		assertEquals(7, region.getWidth());
+		assertEquals(5, region.getHeight());
+		for (int j=0; j<region.getHeight(); j++)
+			for (int i=0; i<region.getWidth(); i++)
+				assertEquals(full.getRaster().getSample(7+4*i, 4+4*j, 0), region.getRaster().getSample(i, j, 0));
+	}
+
+	@Test
+	public void testFloatImageWithColorMap() {
+		ColorModel cm=new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false, Transparency.OPAQUE, DataBuffer.TYPE_FLOAT);
+		WritableRaster raster=Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_FLOAT, 3, 1, 1), null);
+		raster.setSample(0, 0, 0, -5f);
+		raster.setSample(1, 0, 0, .5f);
+		raster.setSample(2, 0, 0, 7f);
+		BufferedImage image=new BufferedImage(cm, raster, false, null);
+		assertTrue(DisplayMapping.isSupported(image));
+		DisplayMapping mapping=new DisplayMapping(.5, 1, 1, new int[] {0x0000ff, 0x00ff00, 0xff0000});
+		BufferedImage mapped=mapping.apply(image, 0, 0, 3, 1, 1);
+		assertEquals(0x0000ff, mapped.getRGB(0, 0) & 0xffffff);
+		assertEquals(0x00ff00, mapped.getRGB(1, 0) & 0xffffff);
+		assertEquals(0xff0000, mapped.getRGB(2, 0) & 0xffffff);
+	}
+
+	@Test
+	public void testUnsupportedImages() {
+		assertFalse(DisplayMapping.isSupported(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB)));
+		assertFalse(DisplayMapping.isSupported(new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_INDEXED)));
+		assertTrue(DisplayMapping.isSupported(new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_GRAY)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidWidth() {
+		new DisplayMapping(0, 0);
+	}
+}
@@ -0,0 +1,216 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class FrameCacheTest {
+	/* Each image is 10x10 grey bytes, so it takes 100 bytes in the cache. */
+	private static final int FRAME_BYTES=100;
+
+	/**
+	 * A loader that writes the position into the first pixel of the image, reusing the recycled image if possible,
+	 * and records the positions it was called with.
+	 */
+	private static class RecordingLoader implements ImageSequenceLoader {
+		final List<Integer> loaded=Collections.synchronizedList(new ArrayList<Integer>());
+		volatile int recycledCount=0;
+
+		@Override
+		public BufferedImage loadImage(int position, BufferedImage recycled) throws IOException {
+			loaded.add(position);
+			BufferedImage image=recycled;
+			if (image==null)
+				image=new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+			else
+				recycledCount++;
+			image.getRaster().setSample(0, 0, 0, position);
+			return image;
+		}
+	}
+
+	/**
+	 * Records the delivered positions, and displays the delivered images like the sequence viewer does.
+	 */
+	private static class RecordingListener implements FrameCache.Listener {
+		FrameCache cache;
+		final List<Integer> delivered=new ArrayList<Integer>();
+		final List<String> errors=Collections.synchronizedList(new ArrayList<String>());
+		volatile BufferedImage displayedImage;
+		volatile int displayedPosition=-1;
+
+		void display(int position, BufferedImage image) {
+			// a delivered or cached image must still contain its own position
+			if (image.getRaster().getSample(0, 0, 0)!=position)
+				errors.add("Image of position "+position+" was overwritten");
+			displayedImage=image;
+			displayedPosition=position;
+			if (cache!=null) cache.setDisplayed(image);
+		}
+
+		@Override
+		public void frameLoaded(int position, BufferedImage image) {
+			delivered.add(position);
+			display(position, image);
+		}
+
+		@Override
+		public void frameFailed(int position, IOException e) {
+			fail();
+		}
+	}
+
+	/**
+	 * Waits until the background loading stops and the loaded images have been delivered.
+	 */
+	private static void waitUntilIdle(FrameCache cache) throws Exception {
+		long deadline=System.currentTimeMillis()+5000;
+		while (cache.isLoading()) {
+			if (System.currentTimeMillis()>deadline) fail("Loading did not finish");
+			Thread.sleep(1);
+		}
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {}
+		});
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedButNotCurrent() throws Exception {
+		RecordingLoader loader=new RecordingLoader();
+		FrameCache cache=new FrameCache(loader, new RecordingListener(), 2*FRAME_BYTES+FRAME_BYTES/2);
+		try {
+			cache.request(0, 1, 2, 10);
+			waitUntilIdle(cache);
+			// loading 2 exceeds the limit; 0 is the oldest, but it is the current position
+			assertEquals(Arrays.asList(0, 1, 2), loader.loaded);
+			assertTrue(cache.isCached(0));
+			assertFalse(cache.isCached(1));
+			assertTrue(cache.isCached(2));
+
+			// requesting 2 makes it the most recently used, so loading 1 evicts 0
+			assertNotNull(cache.request(2, 1, 0, 10));
+			waitUntilIdle(cache);
+			assertEquals(Arrays.asList(0, 1, 2, 1), loader.loaded);
+			assertFalse(cache.isCached(0));
+			assertTrue(cache.isCached(1));
+			assertTrue(cache.isCached(2));
+
+			cache.setMaxBytes(FRAME_BYTES);
+			assertTrue(cache.isCached(2));
+			assertFalse(cache.isCached(1));
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	@Test
+	public void prefetchesInDirectionOfTravel() throws Exception {
+		RecordingLoader loader=new RecordingLoader();
+		FrameCache cache=new FrameCache(loader, new RecordingListener(), 100*FRAME_BYTES);
+		try {
+			cache.request(5, 1, 3, 20);
+			waitUntilIdle(cache);
+			assertEquals(Arrays.asList(5, 6, 7, 8, 4), loader.loaded);
+
+			loader.loaded.clear();
+			assertNotNull(cache.request(5, -1, 3, 20));
+			waitUntilIdle(cache);
+			assertEquals(Arrays.asList(3, 2), loader.loaded);
+
+			// prefetching stops at the ends of the sequence
+			loader.loaded.clear();
+			cache.request(18, 1, 3, 20);
+			waitUntilIdle(cache);
+			assertEquals(Arrays.asList(18, 19, 17), loader.loaded);
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	@Test
+	public void dropsLateDeliveries() throws Exception {
+		final CountDownLatch started=new CountDownLatch(1), release=new CountDownLatch(1);
+		RecordingLoader loader=new RecordingLoader() {
+
+			@Override
+			public BufferedImage loadImage(int position, BufferedImage recycled) throws IOException {
+				if (position==0) {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new AssertionError(e);
+					}
+				}
+				return super.loadImage(position, recycled);
+			}
+		};
+		RecordingListener listener=new RecordingListener();
+		FrameCache cache=new FrameCache(loader, listener, 100*FRAME_BYTES);
+		listener.cache=cache;
+		try {
+			cache.request(0, 1, 0, 10);
+			started.await();
+			cache.request(3, 1, 0, 10);
+			release.countDown();
+			waitUntilIdle(cache);
+			assertEquals(Arrays.asList(3), listener.delivered);
+			assertEquals(Collections.emptyList(), listener.errors);
+			// the late image is still cached
+			assertTrue(cache.isCached(0));
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	@Test
+	public void neverRecyclesDisplayedImage() throws Throwable {
+		final RecordingListener listener=new RecordingListener();
+		RecordingLoader loader=new RecordingLoader() {
+
+			@Override
+			public BufferedImage loadImage(int position, BufferedImage recycled) throws IOException {
+				if (recycled!=null && recycled==listener.displayedImage)
+					listener.errors.add("Displayed image of position "+listener.displayedPosition+" recycled");
+				return super.loadImage(position, recycled);
+			}
+		};
+		// room for a single image, so every step evicts and recycles
+		final FrameCache cache=new FrameCache(loader, listener, FRAME_BYTES);
+		listener.cache=cache;
+		try {
+			for (int p=0; p<20; p++) {
+				final int position=p;
+				SwingUtilities.invokeAndWait(new Runnable() {
+
+					@Override
+					public void run() {
+						BufferedImage image=cache.request(position, 1, 1, 20);
+						if (image!=null) listener.display(position, image);
+					}
+				});
+				waitUntilIdle(cache);
+				// the displayed image was not overwritten by the loader
+				assertEquals(position, listener.displayedPosition);
+				assertEquals(position, listener.displayedImage.getRaster().getSample(0, 0, 0));
+			}
+			assertEquals(Collections.emptyList(), listener.errors);
+			assertTrue(loader.recycledCount>0);
+		} finally {
+			cache.dispose();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package hu.kazocsaba.imageviewer;
+
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class ImageSequenceViewerTest {
+	private static final long MILLISECOND=1000000;
+
+	/**
+	 * Runs the test on the event dispatch thread, so that the playback timer cannot interfere.
+	 */
+	private static void runOnEventThread(final Runnable test) throws Throwable {
+		final Throwable[] failure=new Throwable[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					test.run();
+				} catch (Throwable t) {
+					failure[0]=t;
+				}
+			}
+		});
+		if (failure[0]!=null) throw failure[0];
+	}
+
+	@Test
+	public void playbackFollowsFrameRate() throws Throwable {
+		runOnEventThread(new Runnable() {
+
+			@Override
+			public void run() {
+				ImageSequenceViewer viewer=new ImageSequenceViewer(10);
+				viewer.setFrameRate(10);
+				viewer.play();
+				long start=System.nanoTime();
+				// the timestamps are in the middle of the frames, so the small delay since play() doesn't matter
+				viewer.advancePlayback(start+50*MILLISECOND);
+				assertEquals(0, viewer.getPosition());
+				viewer.advancePlayback(start+150*MILLISECOND);
+				assertEquals(1, viewer.getPosition());
+				assertEquals(0, viewer.getDroppedFrameCount());
+				viewer.advancePlayback(start+450*MILLISECOND);
+				assertEquals(4, viewer.getPosition());
+				assertEquals(2, viewer.getDroppedFrameCount());
+				assertTrue(viewer.isPlaying());
+
+				viewer.advancePlayback(start+10000*MILLISECOND);
+				assertEquals(9, viewer.getPosition());
+				assertFalse(viewer.isPlaying());
+				assertEquals(6, viewer.getDroppedFrameCount());
+
+				// playing from the last frame starts over
+				viewer.play();
+				assertEquals(0, viewer.getPosition());
+				assertEquals(0, viewer.getDroppedFrameCount());
+				viewer.pause();
+			}
+		});
+	}
+
+	@Test
+	public void manualStepsRebasePlayback() throws Throwable {
+		runOnEventThread(new Runnable() {
+
+			@Override
+			public void run() {
+				ImageSequenceViewer viewer=new ImageSequenceViewer(10);
+				viewer.setFrameRate(10);
+				viewer.play();
+				long start=System.nanoTime();
+				viewer.advancePlayback(start+550*MILLISECOND);
+				assertEquals(5, viewer.getPosition());
+				int dropped=viewer.getDroppedFrameCount();
+
+				// stepping back continues from the new position, without jumping back or dropping frames
+				viewer.setPosition(2);
+				long stepped=System.nanoTime();
+				viewer.advancePlayback(stepped+50*MILLISECOND);
+				assertEquals(2, viewer.getPosition());
+				viewer.advancePlayback(stepped+150*MILLISECOND);
+				assertEquals(3, viewer.getPosition());
+				assertEquals(dropped, viewer.getDroppedFrameCount());
+
+				// stepping forward doesn't freeze playback until the old timeline catches up
+				viewer.setPosition(7);
+				stepped=System.nanoTime();
+				viewer.advancePlayback(stepped+150*MILLISECOND);
+				assertEquals(8, viewer.getPosition());
+				assertEquals(dropped, viewer.getDroppedFrameCount());
+
+				// jumping to the last frame stops playback
+				viewer.setPosition(9);
+				viewer.advancePlayback(System.nanoTime()+50*MILLISECOND);
+				assertFalse(viewer.isPlaying());
+			}
+		});
+	}
+
+	@Test
+	public void playbackControlsAreOptional() {
+		ImageSequenceViewer viewer=new ImageSequenceViewer(3);
+		assertFalse(viewer.isPlaybackControlsVisible());
+		viewer.setPlaybackControlsVisible(true);
+		assertTrue(viewer.isPlaybackControlsVisible());
+	}
+}
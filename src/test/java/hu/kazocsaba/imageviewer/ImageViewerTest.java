@@ -1,7 +1,17 @@
 package hu.kazocsaba.imageviewer;
 
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.Random;
 import org.junit.Test;
+import static org.junit.Assert.*;
+import static hu.kazocsaba.imageviewer.ViewerTestUtil.*;
 
 /**
  *
@@ -16,4 +26,134 @@ public class ImageViewerTest {
 		viewer.setZoomFactor(3.2);
 		viewer.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void imageUpdatedBeforeShown() {
+		ImageViewer viewer=new ImageViewer(new BufferedImage(5, 5, BufferedImage.TYPE_INT_RGB));
+		viewer.imageUpdated(new Rectangle(1, 1, 2, 2));
+	}
+	
+	@Test
+	public void imageTransformFollowsChanges() {
+		ImageComponent component=createComponent();
+		component.setImage(new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB));
+		component.setSize(200, 100);
+		component.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+		assertEquals(2.5, component.getImageTransform().getScaleX(), 0);
+		component.setSize(100, 100);
+		assertEquals(2, component.getImageTransform().getScaleX(), 0);
+		component.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		component.setZoomFactor(.7);
+		assertEquals(.7, component.getImageTransform().getScaleX(), 0);
+		component.setImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+		assertEquals((100-10*.7)/2, component.getImageTransform().getTranslateX(), 1e-12);
+	}
+	
+	@Test
+	public void pointToPixelMatchesTransform() throws NoninvertibleTransformException {
+		ImageComponent component=createComponent();
+		component.setImage(new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB));
+		component.setSize(211, 97);
+		component.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+		AffineTransform transform=component.getImageTransform();
+		for (int x=0; x<211; x++)
+			for (int y=0; y<97; y++) {
+				Point2D expected=transform.inverseTransform(new Point2D.Double(x+.5, y+.5), null);
+				Point p=component.pointToPixel(new Point(x, y), false);
+				assertEquals((int)Math.floor(expected.getX()), p.x);
+				assertEquals((int)Math.floor(expected.getY()), p.y);
+			}
+	}
+	
+	@Test
+	public void tiledPaintMatchesDirectPaintAcrossScroll() {
+		BufferedImage image=createRandomImage(300, 200, BufferedImage.TYPE_INT_RGB, 7);
+		ImageComponent component=createComponent();
+		component.setInterpolationType(RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		component.setImage(image);
+		component.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		component.setZoomFactor(2.5);
+		component.setSize(750, 500);
+		AffineTransform transform=component.getImageTransform();
+
+		BufferedImage direct=new BufferedImage(750, 500, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g=direct.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, transform, null);
+		g.dispose();
+
+		// paint the visible area of a viewport at successive scroll positions, so that tiles are both rendered and reused
+		BufferedImage tiled=new BufferedImage(750, 500, BufferedImage.TYPE_INT_RGB);
+		for (int step=0; step<6; step++) {
+			Rectangle viewport=new Rectangle(step*70, step*45, 300, 200);
+			g=tiled.createGraphics();
+			g.clip(viewport);
+			component.paintComponent(g);
+			g.dispose();
+			// the interpolation of a tile can round differently from the whole image
+			for (int y=viewport.y; y<viewport.y+viewport.height; y++)
+				for (int x=viewport.x; x<viewport.x+viewport.width; x++)
+					for (int shift=0; shift<24; shift+=8)
+						assertEquals(step+": "+x+","+y, direct.getRGB(x, y)>>shift & 0xff, tiled.getRGB(x, y)>>shift & 0xff, 1);
+		}
+	}
+	
+	@Test
+	public void partialUpdateMatchesFullRepaint() {
+		Random random=new Random(4);
+		BufferedImage image=new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		for (Object interpolation: new Object[] {RenderingHints.VALUE_INTERPOLATION_BILINEAR, ResamplingFilter.LANCZOS}) {
+			ImageComponent component=createComponent();
+			component.setInterpolationType(interpolation);
+			component.setImage(image);
+			component.setSize(130, 90);
+			component.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+			paint(component);
+			
+			Rectangle region=new Rectangle(150, 100, 40, 30);
+			for (int y=region.y; y<region.y+region.height; y++)
+				for (int x=region.x; x<region.x+region.width; x++)
+					image.setRGB(x, y, random.nextInt());
+			component.imageUpdated(region);
+			BufferedImage updated=paint(component);
+			
+			component.setImage(image);
+			assertImageEquals(interpolation.toString(), paint(component), updated);
+		}
+	}
+	
+	@Test
+	public void partialUpdateWithMappingMatchesFullRepaint() {
+		Random random=new Random(6);
+		BufferedImage image=new BufferedImage(400, 300, BufferedImage.TYPE_USHORT_GRAY);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.getRaster().setSample(x, y, 0, random.nextInt(65536));
+		DisplayMapping mapping=new DisplayMapping(30000, 40000);
+		// shrinking with a pyramid, and without one
+		for (int width: new int[] {130, 300}) {
+			for (ResamplingFilter filter: new ResamplingFilter[] {ResamplingFilter.AREA_AVERAGE, ResamplingFilter.LANCZOS}) {
+				ImageComponent component=createComponent();
+				component.setInterpolationType(filter);
+				component.setDisplayMapping(mapping);
+				component.setImage(image);
+				component.setSize(width, width*3/4);
+				component.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+				paint(component);
+
+				Rectangle region=new Rectangle(150, 100, 40, 30);
+				for (int y=region.y; y<region.y+region.height; y++)
+					for (int x=region.x; x<region.x+region.width; x++)
+						image.getRaster().setSample(x, y, 0, random.nextInt(65536));
+				component.imageUpdated(region);
+				BufferedImage updated=paint(component);
+
+				component.setImage(image);
+				assertImageEquals(filter+" "+width, paint(component), updated);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package hu.kazocsaba.imageviewer;
 
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import static org.junit.Assert.*;
@@ -60,4 +61,22 @@ public class ImageViewerUtilTest {
 				assertEquals(expectedZoom, viewer.getZoomFactor(), 0);
 		}
 	}
+	
+	@Test
+	public void testImageSpaceZoomSynchronization() {
+		ImageViewer large=new ImageViewer(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB));
+		ImageViewer small=new ImageViewer(new BufferedImage(100, 75, BufferedImage.TYPE_INT_RGB));
+		large.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		ImageViewerUtil.synchronizeViewers(large, small);
+		ImageViewerUtil.setSynchronizationMode(small, SynchronizationMode.IMAGE_SPACE);
+		assertSame(SynchronizationMode.IMAGE_SPACE, ImageViewerUtil.getSynchronizationMode(large));
+		
+		large.setZoomFactor(.5);
+		assertEquals(2, small.getZoomFactor(), 0);
+		small.setZoomFactor(1);
+		assertEquals(.25, large.getZoomFactor(), 0);
+		
+		ImageViewerUtil.setSynchronizationMode(large, SynchronizationMode.SCROLL_POSITION);
+		assertEquals(.25, small.getZoomFactor(), 0);
+	}
 }
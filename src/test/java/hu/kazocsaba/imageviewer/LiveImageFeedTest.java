@@ -0,0 +1,44 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class LiveImageFeedTest {
+
+	@Test
+	public void latestFrameWins() throws Exception {
+		final ImageViewer viewer=new ImageViewer();
+		final LiveImageFeed feed=new LiveImageFeed(viewer);
+		final BufferedImage[] frames=new BufferedImage[200];
+		for (int i=0; i<frames.length; i++) frames[i]=new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY);
+		Thread producer=new Thread() {
+
+			@Override
+			public void run() {
+				for (BufferedImage frame: frames) feed.submit(frame);
+			}
+		};
+		producer.start();
+		producer.join();
+		// wait until the pending frame has been displayed
+		long deadline=System.currentTimeMillis()+5000;
+		while (feed.getDisplayedFrameCount()+feed.getDroppedFrameCount()<frames.length && System.currentTimeMillis()<deadline)
+			Thread.sleep(10);
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				assertSame(frames[frames.length-1], viewer.getImage());
+			}
+		});
+		assertEquals(frames.length, feed.getProducedFrameCount());
+		assertEquals(frames.length, feed.getDisplayedFrameCount()+feed.getDroppedFrameCount());
+		assertTrue(feed.getDroppedFrameCount()>0);
+	}
+}
@@ -0,0 +1,85 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class MappedRawImageSourceTest {
+	private File file;
+	
+	@Before
+	public void createFile() throws IOException {
+		file=File.createTempFile("raw", ".bin");
+	}
+	
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+	
+	private void write(ByteBuffer buffer) throws IOException {
+		FileOutputStream out=new FileOutputStream(file);
+		try {
+			out.write(buffer.array());
+		} finally {
+			out.close();
+		}
+	}
+	
+	@Test
+	public void test16BitWithHeaderAndPadding() throws IOException {
+		// 16 byte header, 5x3 pixels, 12 bytes per row
+		ByteBuffer buffer=ByteBuffer.allocate(16+3*12).order(ByteOrder.LITTLE_ENDIAN);
+		for (int y=0; y<3; y++)
+			for (int x=0; x<5; x++)
+				buffer.putShort(16+y*12+2*x, (short)(1000*y+x+60000));
+		write(buffer);
+		
+		MappedRawImageSource source=new MappedRawImageSource(file, 16, 5, 3, 12, 16, ByteOrder.LITTLE_ENDIAN);
+		assertEquals(5, source.getWidth());
+		assertEquals(3, source.getHeight());
+		
+		BufferedImage region=source.readRegion(1, 1, 4, 2, 1);
+		assertEquals(BufferedImage.TYPE_USHORT_GRAY, region.getType());
+		assertEquals(4, region.getWidth());
+		assertEquals(2, region.getHeight());
+		assertEquals(61001, region.getRaster().getSample(0, 0, 0));
+		assertEquals(62004, region.getRaster().getSample(3, 1, 0));
+		
+		BufferedImage reduced=source.readRegion(0, 0, 5, 3, 2);
+		assertEquals(3, reduced.getWidth());
+		assertEquals(2, reduced.getHeight());
+		assertEquals(60004, reduced.getRaster().getSample(2, 0, 0));
+		assertEquals(62002, reduced.getRaster().getSample(1, 1, 0));
+	}
+	
+	@Test
+	public void test8Bit() throws IOException {
+		ByteBuffer buffer=ByteBuffer.allocate(4*4);
+		for (int i=0; i<16; i++)
+			buffer.put(i, (byte)(200+i));
+		write(buffer);
+		
+		MappedRawImageSource source=new MappedRawImageSource(file, 0, 4, 4, 4, 8, ByteOrder.BIG_ENDIAN);
+		BufferedImage pixel=source.readRegion(3, 2, 1, 1, 1);
+		assertEquals(BufferedImage.TYPE_BYTE_GRAY, pixel.getType());
+		assertEquals(211, pixel.getRaster().getSample(0, 0, 0));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testFileTooShort() throws IOException {
+		write(ByteBuffer.allocate(10));
+		new MappedRawImageSource(file, 0, 4, 4, 4, 8, ByteOrder.BIG_ENDIAN);
+	}
+}
@@ -0,0 +1,108 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class MarkerIndexTest {
+	private static Set<Point> points(MarkerIndex index, Rectangle region) {
+		final Set<Point> result=new HashSet<Point>();
+		index.visitPoints(region, new MarkerIndex.Visitor() {
+			@Override
+			public void point(int x, int y) {
+				result.add(new Point(x, y));
+			}
+			@Override
+			public void cell(int cellX, int cellY, int cellSize, int count) {}
+		});
+		return result;
+	}
+	
+	@Test
+	public void testAddRemove() {
+		MarkerIndex index=new MarkerIndex();
+		assertTrue(index.add(3, 4));
+		assertFalse(index.add(3, 4));
+		assertTrue(index.add(-100, 1000));
+		assertEquals(2, index.size());
+		assertTrue(index.remove(3, 4));
+		assertFalse(index.remove(3, 4));
+		assertEquals(1, index.size());
+		index.clear();
+		assertEquals(0, index.size());
+		assertTrue(points(index, new Rectangle(-1000, -1000, 3000, 3000)).isEmpty());
+	}
+	
+	@Test
+	public void testVisitPoints() {
+		MarkerIndex index=new MarkerIndex();
+		index.add(5, 5);
+		index.add(-5, 40);
+		index.add(1000, 1000);
+		Set<Point> visible=points(index, new Rectangle(0, 0, 10, 10));
+		assertTrue(visible.contains(new Point(5, 5)));
+		assertFalse(visible.contains(new Point(1000, 1000)));
+		assertFalse(visible.contains(new Point(-5, 40)));
+		assertEquals(3, points(index, new Rectangle(-10, -10, 2000, 2000)).size());
+	}
+	
+	@Test
+	public void testVisitCells() {
+		MarkerIndex index=new MarkerIndex();
+		for (int i=0; i<10; i++)
+			index.add(i, i);
+		index.add(70, 3);
+		final Map<Point, Integer> counts=new HashMap<Point, Integer>();
+		index.visitCells(new Rectangle(0, 0, 200, 200), 1, new MarkerIndex.Visitor() {
+			@Override
+			public void point(int x, int y) {}
+			@Override
+			public void cell(int cellX, int cellY, int cellSize, int count) {
+				assertEquals(MarkerIndex.CELL_SIZE*2, cellSize);
+				counts.put(new Point(cellX, cellY), count);
+			}
+		});
+		assertEquals(2, counts.size());
+		assertEquals(Integer.valueOf(10), counts.get(new Point(0, 0)));
+		assertEquals(Integer.valueOf(1), counts.get(new Point(1, 0)));
+	}
+	
+	@Test
+	public void testDenseCell() {
+		MarkerIndex index=new MarkerIndex();
+		for (int x=0; x<MarkerIndex.CELL_SIZE; x++)
+			for (int y=0; y<MarkerIndex.CELL_SIZE; y++)
+				assertTrue(index.add(x, y));
+		assertFalse(index.add(7, 9));
+		assertEquals(MarkerIndex.CELL_SIZE*MarkerIndex.CELL_SIZE, points(index, new Rectangle(0, 0, 1, 1)).size());
+		assertTrue(index.remove(7, 9));
+		assertFalse(index.remove(7, 9));
+		assertFalse(points(index, new Rectangle(0, 0, 1, 1)).contains(new Point(7, 9)));
+	}
+	
+	@Test
+	public void testRandom() {
+		Random random=new Random(42);
+		MarkerIndex index=new MarkerIndex();
+		Set<Point> expected=new HashSet<Point>();
+		for (int i=0; i<20000; i++) {
+			int x=random.nextInt(2000)-1000, y=random.nextInt(200)-100;
+			if (random.nextInt(3)==0)
+				assertEquals(expected.remove(new Point(x, y)), index.remove(x, y));
+			else
+				assertEquals(expected.add(new Point(x, y)), index.add(x, y));
+		}
+		assertEquals(expected.size(), index.size());
+		assertEquals(expected, points(index, new Rectangle(-1000, -100, 2000, 200)));
+	}
+}
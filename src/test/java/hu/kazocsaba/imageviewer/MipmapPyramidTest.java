@@ -0,0 +1,132 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class MipmapPyramidTest {
+	@Test
+	public void testLevelSelection() {
+		MipmapPyramid pyramid=new MipmapPyramid(new BufferedImage(100, 60, BufferedImage.TYPE_INT_RGB));
+		assertEquals(0, pyramid.levelFor(1));
+		assertEquals(0, pyramid.levelFor(.6));
+		assertEquals(1, pyramid.levelFor(.5));
+		assertEquals(1, pyramid.levelFor(.3));
+		assertEquals(2, pyramid.levelFor(.25));
+		assertEquals(7, pyramid.levelFor(.0001));
+	}
+	
+	@Test
+	public void testAveragingKeepsSampleDepth() {
+		BufferedImage image=new BufferedImage(3, 3, BufferedImage.TYPE_USHORT_GRAY);
+		WritableRaster raster=image.getRaster();
+		int[] samples={
+			1000, 3000, 60000,
+			5000, 7000, 2,
+			100, 300, 65535};
+		raster.setPixels(0, 0, 3, 3, samples);
+		
+		MipmapPyramid pyramid=new MipmapPyramid(image);
+		BufferedImage level=pyramid.getLevel(1);
+		assertEquals(BufferedImage.TYPE_USHORT_GRAY, level.getType());
+		assertEquals(2, level.getWidth());
+		assertEquals(2, level.getHeight());
+		assertEquals(4000, level.getRaster().getSample(0, 0, 0));
+		assertEquals(30001, level.getRaster().getSample(1, 0, 0));
+		assertEquals(200, level.getRaster().getSample(0, 1, 0));
+		assertEquals(65535, level.getRaster().getSample(1, 1, 0));
+		
+		assertSame(level, pyramid.getLevel(1));
+		assertEquals(1, pyramid.getLevel(2).getWidth());
+	}
+	
+	@Test
+	public void testUpdateMatchesRebuild() {
+		Random random=new Random(3);
+		BufferedImage image=new BufferedImage(101, 77, BufferedImage.TYPE_INT_RGB);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		MipmapPyramid pyramid=new MipmapPyramid(image);
+		pyramid.getLevel(4);
+		
+		Rectangle region=new Rectangle(37, 20, 11, 30);
+		for (int y=region.y; y<region.y+region.height; y++)
+			for (int x=region.x; x<region.x+region.width; x++)
+				image.setRGB(x, y, random.nextInt());
+		pyramid.update(region);
+		
+		MipmapPyramid rebuilt=new MipmapPyramid(image);
+		for (int level=1; level<=4; level++) {
+			BufferedImage expected=rebuilt.getLevel(level), actual=pyramid.getLevel(level);
+			for (int y=0; y<expected.getHeight(); y++)
+				for (int x=0; x<expected.getWidth(); x++)
+					assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+		}
+	}
+	
+	@Test
+	public void testCachedBytesDoesNotBlock() throws Exception {
+		final MipmapPyramid pyramid=new MipmapPyramid(new BufferedImage(100, 60, BufferedImage.TYPE_INT_RGB));
+		pyramid.getLevel(1);
+		FutureTask<Long> bytes=new FutureTask<Long>(new Callable<Long>() {
+
+			@Override
+			public Long call() {
+				return pyramid.getCachedBytes();
+			}
+		});
+		// as if another thread held the lock for a long time
+		synchronized (pyramid) {
+			new Thread(bytes).start();
+			assertEquals(50*30*4, (long)bytes.get(5, TimeUnit.SECONDS));
+		}
+	}
+	
+	@Test
+	public void testUpdateDuringConcurrentBuilds() throws Exception {
+		Random random=new Random(4);
+		final BufferedImage image=new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		for (int round=0; round<10; round++) {
+			final MipmapPyramid pyramid=new MipmapPyramid(image);
+			Thread builder=new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					pyramid.getLevel(5);
+				}
+			});
+			builder.start();
+			// the updates arrive before, during and after the computation of the levels
+			while (builder.isAlive()) {
+				Rectangle region=new Rectangle(random.nextInt(590), random.nextInt(390), 10, 10);
+				for (int y=region.y; y<region.y+region.height; y++)
+					for (int x=region.x; x<region.x+region.width; x++)
+						image.setRGB(x, y, random.nextInt());
+				pyramid.update(region);
+			}
+			builder.join();
+			
+			MipmapPyramid rebuilt=new MipmapPyramid(image);
+			for (int level=1; level<=5; level++) {
+				BufferedImage expected=rebuilt.getLevel(level), actual=pyramid.getLevel(level);
+				for (int y=0; y<expected.getHeight(); y++)
+					for (int x=0; x<expected.getWidth(); x++)
+						assertEquals(round+" "+level+" at "+x+","+y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+}
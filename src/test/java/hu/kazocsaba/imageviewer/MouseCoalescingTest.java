@@ -0,0 +1,119 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class MouseCoalescingTest {
+
+	/**
+	 * Records the events of the image and of the component as strings. Coalesced events are listed with all their
+	 * positions, since the event object is reused.
+	 */
+	private static class Recorder extends MouseAdapter implements ImageMouseMotionListener {
+		final List<String> events=new ArrayList<String>();
+
+		private void record(String name, ImageMouseEvent e) {
+			StringBuilder sb=new StringBuilder(name);
+			for (int i=0; i<e.getCoalescedCount(); i++)
+				sb.append(' ').append(e.getCoalescedX(i)).append(',').append(e.getCoalescedY(i));
+			assertEquals(e.getCoalescedX(e.getCoalescedCount()-1), e.getX());
+			assertEquals(e.getCoalescedY(e.getCoalescedCount()-1), e.getY());
+			events.add(sb.toString());
+		}
+
+		@Override
+		public void mouseMoved(ImageMouseEvent e) {
+			record("moved", e);
+		}
+
+		@Override
+		public void mouseEntered(ImageMouseEvent e) {
+			events.add("entered "+e.getX()+","+e.getY());
+		}
+
+		@Override
+		public void mouseExited(ImageMouseEvent e) {
+			events.add("exited");
+		}
+
+		@Override
+		public void mouseDragged(ImageMouseEvent e) {
+			record("dragged", e);
+		}
+
+		@Override
+		public void mousePressed(MouseEvent e) {
+			events.add("pressed");
+		}
+
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			events.add("released");
+		}
+	}
+
+	private static void send(ImageComponent component, int id, int x, int y) {
+		int modifiers=id==MouseEvent.MOUSE_DRAGGED || id==MouseEvent.MOUSE_RELEASED ? MouseEvent.BUTTON1_DOWN_MASK : 0;
+		int button=id==MouseEvent.MOUSE_PRESSED || id==MouseEvent.MOUSE_RELEASED ? MouseEvent.BUTTON1 : MouseEvent.NOBUTTON;
+		component.dispatchEvent(new MouseEvent(component, id, System.currentTimeMillis(), modifiers, x, y, 0, false, button));
+	}
+
+	@Test
+	public void coalescedMotionKeepsOrderAndPath() throws Throwable {
+		final Throwable[] failure=new Throwable[1];
+		// the events are sent in a single task, so the coalescing timer cannot fire in between
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					ImageComponent component=ViewerTestUtil.createComponent();
+					component.setImage(new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB));
+					component.setSize(50, 40);
+					component.setResizeStrategy(ResizeStrategy.NO_RESIZE);
+					component.setMouseMotionCoalescing(true);
+					Recorder recorder=new Recorder();
+					component.addImageMouseMoveListener(recorder);
+					component.addMouseListener(recorder);
+
+					send(component, MouseEvent.MOUSE_ENTERED, 1, 1);
+					send(component, MouseEvent.MOUSE_MOVED, 2, 1);
+					send(component, MouseEvent.MOUSE_MOVED, 3, 2);
+					send(component, MouseEvent.MOUSE_PRESSED, 3, 2);
+					send(component, MouseEvent.MOUSE_DRAGGED, 4, 2);
+					send(component, MouseEvent.MOUSE_DRAGGED, 5, 3);
+					send(component, MouseEvent.MOUSE_DRAGGED, 6, 3);
+					send(component, MouseEvent.MOUSE_RELEASED, 6, 3);
+					send(component, MouseEvent.MOUSE_MOVED, 7, 3);
+					send(component, MouseEvent.MOUSE_MOVED, 8, 4);
+					send(component, MouseEvent.MOUSE_EXITED, 60, 4);
+					// nothing is pending after the exit
+					component.setMouseMotionCoalescing(false);
+
+					assertEquals(Arrays.asList(
+							"entered 1,1",
+							"moved 1,1 2,1 3,2",
+							"pressed",
+							"dragged 4,2 5,3 6,3",
+							"released",
+							"moved 7,3 8,4",
+							"exited"), recorder.events);
+				} catch (Throwable t) {
+					failure[0]=t;
+				}
+			}
+		});
+		if (failure[0]!=null) throw failure[0];
+	}
+}
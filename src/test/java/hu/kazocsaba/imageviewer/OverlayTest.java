@@ -1,6 +1,20 @@
 package hu.kazocsaba.imageviewer;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 import org.junit.Test;
+import static org.junit.Assert.*;
+import static hu.kazocsaba.imageviewer.ViewerTestUtil.*;
 
 /**
  *
@@ -19,4 +33,275 @@ public class OverlayTest {
 		viewer.removeOverlay(overlay);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void cacheableOverlayIsPaintedOnce() throws Exception {
+		ImageComponent image=createComponent();
+		image.setImage(new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB));
+		image.setSize(100, 80);
+		image.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+		final Color[] color={Color.RED};
+		final int[] paintCount={0};
+		Overlay overlay=new Overlay() {
+			@Override
+			public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {
+				paintCount[0]++;
+				g.setColor(color[0]);
+				g.fill(transform.createTransformedShape(new Rectangle(10, 10, 20, 10)));
+			}
+		};
+		overlay.setCacheable(true);
+		OverlayComponent component=new OverlayComponent(overlay, image);
+		overlay.addOverlayComponent(component);
+		component.setSize(100, 80);
+
+		BufferedImage first=paint(component);
+		BufferedImage second=paint(component);
+		assertEquals(1, paintCount[0]);
+		assertEquals(Color.RED.getRGB(), first.getRGB(30, 30));
+		assertEquals(0, first.getRGB(10, 10));
+		for (int y=0; y<first.getHeight(); y++)
+			for (int x=0; x<first.getWidth(); x++)
+				assertEquals(first.getRGB(x, y), second.getRGB(x, y));
+
+		color[0]=Color.BLUE;
+		overlay.repaint(new Rectangle(10, 10, 5, 5));
+		// called outside the event dispatch thread, the repaint is forwarded there
+		SwingUtilities.invokeAndWait(NOTHING);
+		BufferedImage partial=paint(component);
+		assertEquals(2, paintCount[0]);
+		assertEquals(Color.BLUE.getRGB(), partial.getRGB(25, 25));
+		assertEquals(Color.RED.getRGB(), partial.getRGB(50, 30));
+
+		overlay.repaint();
+		assertEquals(Color.BLUE.getRGB(), paint(component).getRGB(50, 30));
+		image.setSize(50, 40);
+		component.setSize(50, 40);
+		paint(component);
+		assertEquals(4, paintCount[0]);
+	}
+
+	@Test
+	public void overlaysReceiveImageSource() {
+		ImageComponent image=createComponent();
+		final ImageSource source=new ImageSource() {
+
+			@Override
+			public int getWidth() {
+				return 50;
+			}
+
+			@Override
+			public int getHeight() {
+				return 40;
+			}
+
+			@Override
+			public ColorModel getColorModel() {
+				return ColorModel.getRGBdefault();
+			}
+
+			@Override
+			public BufferedImage readRegion(int x, int y, int width, int height, int subsample) {
+				return new BufferedImage((width+subsample-1)/subsample, (height+subsample-1)/subsample, BufferedImage.TYPE_INT_ARGB);
+			}
+		};
+		image.setImageSource(source);
+		image.setSize(100, 80);
+		image.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+
+		final List<ImageSource> sources=new ArrayList<ImageSource>();
+		Overlay sourceOverlay=new Overlay() {
+			@Override
+			public void paint(Graphics2D g, ImageSource source, AffineTransform transform) {
+				sources.add(source);
+				g.setColor(Color.RED);
+				g.fill(transform.createTransformedShape(new Rectangle(source.getWidth()-5, source.getHeight()-5, 5, 5)));
+			}
+		};
+		OverlayComponent component=new OverlayComponent(sourceOverlay, image);
+		component.setSize(100, 80);
+		BufferedImage painted=paint(component);
+		assertEquals(1, sources.size());
+		assertSame(source, sources.get(0));
+		assertEquals(Color.RED.getRGB(), painted.getRGB(95, 75));
+		assertEquals(0, painted.getRGB(85, 65));
+
+		// overlays implementing the image version receive null for sources that are not images
+		final List<BufferedImage> images=new ArrayList<BufferedImage>();
+		Overlay imageOverlay=new Overlay() {
+			@Override
+			public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {
+				images.add(image);
+			}
+		};
+		component=new OverlayComponent(imageOverlay, image);
+		component.setSize(100, 80);
+		paint(component);
+		BufferedImage bufferedImage=new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB);
+		image.setImage(bufferedImage);
+		paint(component);
+		assertEquals(2, images.size());
+		assertNull(images.get(0));
+		assertSame(bufferedImage, images.get(1));
+	}
+
+	@Test
+	public void compositingKeepsLayerOrder() {
+		ImageComponent image=createComponent();
+		image.setImage(new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB));
+		image.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+		LayeredImageView view=new LayeredImageView(image);
+		view.addOverlay(new RectangleOverlay(Color.RED, new Rectangle(0, 0, 30, 30)), 2);
+		view.addOverlay(new RectangleOverlay(Color.GREEN, new Rectangle(10, 10, 30, 30)), 1);
+		view.addOverlay(new RectangleOverlay(Color.BLUE, new Rectangle(20, 20, 30, 20)), 1);
+		RectangleOverlay outside=new RectangleOverlay(Color.WHITE, new Rectangle(60, 60, 10, 10));
+		view.addOverlay(outside, 3);
+		JComponent component=view.getComponent();
+		component.setSize(100, 80);
+		component.doLayout();
+
+		BufferedImage separate=paintComponentTree(component);
+		view.setOverlayCompositing(true);
+		assertTrue(view.isOverlayCompositing());
+		component.doLayout();
+		BufferedImage composited=paintComponentTree(component);
+		for (int y=0; y<separate.getHeight(); y++)
+			for (int x=0; x<separate.getWidth(); x++)
+				assertEquals(x+","+y, separate.getRGB(x, y), composited.getRGB(x, y));
+		assertEquals(Color.RED.getRGB(), composited.getRGB(25, 25));
+		assertEquals(Color.GREEN.getRGB(), composited.getRGB(70, 50));
+		assertEquals(0, outside.paintCount);
+
+		view.removeOverlay(outside);
+		view.setOverlayCompositing(false);
+		component.doLayout();
+		BufferedImage restored=paintComponentTree(component);
+		for (int y=0; y<separate.getHeight(); y++)
+			for (int x=0; x<separate.getWidth(); x++)
+				assertEquals(x+","+y, separate.getRGB(x, y), restored.getRGB(x, y));
+	}
+
+	/**
+	 * A component recording the repaint requests forwarded to it by hosted overlay components.
+	 */
+	private static class RepaintRecorder extends JComponent {
+		final List<Rectangle> requests=new ArrayList<Rectangle>();
+
+		@Override
+		public void repaint(long tm, int x, int y, int width, int height) {
+			requests.add(new Rectangle(x, y, width, height));
+		}
+	}
+
+	@Test
+	public void markerRepaintFollowsEachViewersZoom() throws Exception {
+		PixelMarkerOverlay overlay=new PixelMarkerOverlay();
+		OverlayComponent[] components=new OverlayComponent[2];
+		RepaintRecorder[] recorders=new RepaintRecorder[2];
+		// the first viewer is zoomed in, the second one is zoomed out so much that markers are aggregated
+		double[] zooms={4, 1/64.};
+		for (int i=0; i<2; i++) {
+			ImageComponent image=createComponent();
+			image.setImage(new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY));
+			image.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+			image.setZoomFactor(zooms[i]);
+			image.setSize(100, 100);
+			components[i]=new OverlayComponent(overlay, image);
+			components[i].setSize(100, 100);
+			overlay.addOverlayComponent(components[i]);
+			recorders[i]=new RepaintRecorder();
+			components[i].setHost(recorders[i]);
+		}
+		overlay.addPoint(new Point(3, 3));
+		SwingUtilities.invokeAndWait(NOTHING);
+		// the zoomed out viewer painted last, so a shared aggregate cell size would apply to both viewers
+		paint(components[0]);
+		paint(components[1]);
+		recorders[0].requests.clear();
+		recorders[1].requests.clear();
+
+		overlay.addPoint(new Point(5, 5));
+		// the repaint requests are forwarded to the event dispatch thread
+		SwingUtilities.invokeAndWait(NOTHING);
+		assertEquals(1, recorders[0].requests.size());
+		assertEquals(1, recorders[1].requests.size());
+		// the zoomed in viewer only repaints around the point: 3 pixels at zoom 4, and the margin
+		Rectangle zoomedIn=recorders[0].requests.get(0);
+		assertTrue(zoomedIn.toString(), zoomedIn.width<=3*4+2*(5+2)+2);
+		// the zoomed out viewer repaints the whole aggregated cell
+		Rectangle zoomedOut=recorders[1].requests.get(0);
+		Rectangle cell=components[1].theImage.getImageTransform().createTransformedShape(new Rectangle(0, 0, 64, 64)).getBounds();
+		assertTrue(zoomedOut.contains(cell));
+	}
+
+	@Test
+	public void repaintFromOtherThreadIsForwarded() throws Exception {
+		ImageComponent image=createComponent();
+		image.setImage(new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB));
+		image.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		image.setZoomFactor(2);
+		image.setSize(100, 80);
+		Overlay overlay=new PixelMarkerOverlay();
+		OverlayComponent component=new OverlayComponent(overlay, image);
+		component.setSize(100, 80);
+		overlay.addOverlayComponent(component);
+		RepaintRecorder recorder=new RepaintRecorder();
+		component.setHost(recorder);
+
+		// keep the event dispatch thread busy, so that the forwarded request cannot be handled yet
+		final CountDownLatch latch=new CountDownLatch(1);
+		SwingUtilities.invokeLater(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		Rectangle region=new Rectangle(5, 5, 10, 10);
+		try {
+			overlay.repaint(region, 1);
+			region.setBounds(0, 0, 1, 1);
+			assertTrue(recorder.requests.isEmpty());
+		} finally {
+			latch.countDown();
+		}
+		SwingUtilities.invokeAndWait(NOTHING);
+		assertEquals(1, recorder.requests.size());
+		assertEquals(new Rectangle(9, 9, 22, 22), recorder.requests.get(0));
+	}
+
+	private static class RectangleOverlay extends Overlay {
+		private final Color color;
+		private final Rectangle rectangle;
+		int paintCount=0;
+
+		public RectangleOverlay(Color color, Rectangle rectangle) {
+			this.color=color;
+			this.rectangle=rectangle;
+		}
+
+		@Override
+		public Rectangle getPaintBounds(BufferedImage image, AffineTransform transform) {
+			return transform.createTransformedShape(rectangle).getBounds();
+		}
+
+		@Override
+		public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {
+			paintCount++;
+			g.setColor(color);
+			g.fill(transform.createTransformedShape(rectangle));
+		}
+	}
+
+	private static BufferedImage paintComponentTree(JComponent component) {
+		BufferedImage result=new BufferedImage(component.getWidth(), component.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g=result.createGraphics();
+		component.paint(g);
+		g.dispose();
+		return result;
+	}
+}
@@ -0,0 +1,160 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static hu.kazocsaba.imageviewer.ViewerTestUtil.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class PaintMetricsTest {
+
+	private static ImageComponent createComponent(int imageWidth, int imageHeight) {
+		ImageComponent component=ViewerTestUtil.createComponent();
+		component.setImage(new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB));
+		component.setPaintMetricsEnabled(true);
+		return component;
+	}
+
+	@Test
+	public void histogramBuckets() {
+		PaintMetrics metrics=new PaintMetrics();
+		long[] nanos={0, 999, 1000, 1999, 2000, 3999, 4000, 1000L<<22, (1000L<<23)-1, 1000L<<23, Long.MAX_VALUE/2};
+		int[] buckets={0, 0, 0, 0, 1, 1, 2, 22, 22, 23, 23};
+		for (long n: nanos)
+			metrics.paintFinished(n, 0);
+		long[] expected=new long[PaintMetrics.HISTOGRAM_BUCKETS];
+		for (int b: buckets)
+			expected[b]++;
+		assertArrayEquals(expected, metrics.getPaintTimeHistogram());
+		assertEquals(nanos.length, metrics.getPaintCount());
+		assertEquals(Long.MAX_VALUE/2, metrics.getMaxPaintTime());
+
+		// the returned histogram is a copy
+		metrics.getPaintTimeHistogram()[0]=100;
+		assertEquals(4, metrics.getPaintTimeHistogram()[0]);
+	}
+
+	@Test
+	public void cacheCounts() {
+		ImageComponent component=createComponent(400, 300);
+		component.setInterpolationType(RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		component.setSize(130, 90);
+		component.setResizeStrategy(ResizeStrategy.RESIZE_TO_FIT);
+		PaintMetrics metrics=component.getPaintMetrics();
+		paint(component);
+		assertEquals(0, metrics.getCacheHitCount());
+		assertEquals(1, metrics.getCacheMissCount());
+		paint(component);
+		paint(component);
+		assertEquals(2, metrics.getCacheHitCount());
+		assertEquals(1, metrics.getCacheMissCount());
+		component.setSize(120, 80);
+		paint(component);
+		assertEquals(2, metrics.getCacheHitCount());
+		assertEquals(2, metrics.getCacheMissCount());
+
+		assertEquals(0, metrics.getTileHitCount()+metrics.getTileMissCount());
+		assertEquals(0, metrics.getDirectPaintCount());
+		assertEquals(4, metrics.getPaintCount());
+		assertTrue(metrics.getCachedBytes()>=120*80*4);
+	}
+
+	@Test
+	public void tileCounts() {
+		ImageComponent component=createComponent(300, 200);
+		component.setInterpolationType(RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		component.setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		component.setZoomFactor(2.5);
+		component.setSize(750, 500);
+		PaintMetrics metrics=component.getPaintMetrics();
+		// the component is covered by 3x2 tiles
+		paint(component);
+		assertEquals(0, metrics.getTileHitCount());
+		assertEquals(6, metrics.getTileMissCount());
+		paint(component);
+		assertEquals(6, metrics.getTileHitCount());
+		assertEquals(6, metrics.getTileMissCount());
+		paint(component, new Rectangle(200, 200, 100, 100));
+		assertEquals(10, metrics.getTileHitCount());
+		assertEquals(6, metrics.getTileMissCount());
+
+		assertEquals(0, metrics.getCacheHitCount()+metrics.getCacheMissCount());
+		assertEquals(0, metrics.getDirectPaintCount());
+		assertEquals(3, metrics.getPaintCount());
+	}
+
+	@Test
+	public void directPaintsAndReset() {
+		ImageComponent component=createComponent(100, 80);
+		component.setSize(150, 100);
+		component.setResizeStrategy(ResizeStrategy.NO_RESIZE);
+		PaintMetrics metrics=component.getPaintMetrics();
+		paint(component);
+		paint(component);
+		assertEquals(2, metrics.getDirectPaintCount());
+		assertEquals(2, metrics.getPaintCount());
+		long histogramTotal=0;
+		for (long count: metrics.getPaintTimeHistogram())
+			histogramTotal+=count;
+		assertEquals(2, histogramTotal);
+		assertTrue(metrics.getTotalPaintTime()>=metrics.getMaxPaintTime());
+
+		long cachedBytes=metrics.getCachedBytes();
+		metrics.reset();
+		assertEquals(0, metrics.getPaintCount());
+		assertEquals(0, metrics.getTotalPaintTime());
+		assertEquals(0, metrics.getMaxPaintTime());
+		assertEquals(0, metrics.getDirectPaintCount());
+		assertArrayEquals(new long[PaintMetrics.HISTOGRAM_BUCKETS], metrics.getPaintTimeHistogram());
+		assertEquals(cachedBytes, metrics.getCachedBytes());
+		paint(component);
+		assertEquals(1, metrics.getPaintCount());
+		assertEquals(1, metrics.getDirectPaintCount());
+	}
+
+	@Test
+	public void overlayTimes() {
+		ImageComponent component=createComponent(100, 80);
+		component.setSize(100, 80);
+		component.setResizeStrategy(ResizeStrategy.NO_RESIZE);
+		Overlay slow=new Overlay() {
+
+			@Override
+			public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Overlay unused=new Overlay() {
+
+			@Override
+			public void paint(Graphics2D g, BufferedImage image, AffineTransform transform) {}
+		};
+		OverlayComponent overlayComponent=new OverlayComponent(slow, component);
+		overlayComponent.setSize(100, 80);
+		PaintMetrics metrics=component.getPaintMetrics();
+		for (int i=0; i<3; i++) {
+			paint(overlayComponent);
+		}
+		assertEquals(3, metrics.getOverlayPaintCount(slow));
+		assertTrue(metrics.getOverlayPaintTime(slow)>=3*2000000L);
+		assertEquals(0, metrics.getOverlayPaintCount(unused));
+		assertEquals(0, metrics.getOverlayPaintTime(unused));
+		// the overlays are not part of the paint time of the image
+		assertEquals(0, metrics.getPaintCount());
+
+		metrics.reset();
+		assertEquals(0, metrics.getOverlayPaintCount(slow));
+		assertEquals(0, metrics.getOverlayPaintTime(slow));
+	}
+}
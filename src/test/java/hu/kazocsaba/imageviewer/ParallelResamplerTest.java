@@ -0,0 +1,97 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class ParallelResamplerTest {
+	private static BufferedImage createRandomImage(int width, int height, int type, long seed) {
+		Random random=new Random(seed);
+		BufferedImage image=new BufferedImage(width, height, type);
+		for (int y=0; y<height; y++)
+			for (int x=0; x<width; x++)
+				image.setRGB(x, y, random.nextInt());
+		return image;
+	}
+
+	@Test
+	public void testAreaAverageHalving() {
+		BufferedImage source=createRandomImage(300, 200, BufferedImage.TYPE_INT_RGB, 1);
+		BufferedImage target=new BufferedImage(150, 100, BufferedImage.TYPE_INT_RGB);
+		ParallelResampler.resample(source, target, .5, 0, 0, ResamplingFilter.AREA_AVERAGE, Color.BLACK, null);
+		for (int y=0; y<100; y++)
+			for (int x=0; x<150; x++)
+				for (int shift=0; shift<24; shift+=8) {
+					int sum=0;
+					for (int dy=0; dy<2; dy++)
+						for (int dx=0; dx<2; dx++)
+							sum+=(source.getRGB(2*x+dx, 2*y+dy)>>shift)&0xff;
+					assertEquals(sum/4., (target.getRGB(x, y)>>shift)&0xff, .51);
+				}
+	}
+
+	@Test
+	public void testUniformImageStaysUniform() {
+		BufferedImage source=new BufferedImage(501, 333, BufferedImage.TYPE_3BYTE_BGR);
+		for (int y=0; y<source.getHeight(); y++)
+			for (int x=0; x<source.getWidth(); x++)
+				source.setRGB(x, y, 0x336699);
+		for (ResamplingFilter filter: ResamplingFilter.values()) {
+			BufferedImage target=new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+			ParallelResampler.resample(source, target, .3, 10.5, 20.25, filter, Color.WHITE, null);
+			// the covered area is written, the rest is left untouched
+			assertEquals(0, target.getRGB(5, 100) & 0xffffff);
+			for (int y=21; y<119; y++)
+				for (int x=11; x<160; x++)
+					assertEquals(filter.toString(), 0x336699, target.getRGB(x, y) & 0xffffff);
+		}
+	}
+
+	@Test
+	public void testTransparencyOverBackground() {
+		BufferedImage source=new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+		for (int y=0; y<40; y++)
+			for (int x=0; x<40; x++)
+				source.setRGB(x, y, 0x00ff0000);
+		BufferedImage target=new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+		ParallelResampler.resample(source, target, .25, 0, 0, ResamplingFilter.LANCZOS, Color.BLUE, null);
+		assertEquals(0x0000ff, target.getRGB(5, 5) & 0xffffff);
+	}
+
+	@Test
+	public void testCopy() {
+		BufferedImage source=createRandomImage(123, 457, BufferedImage.TYPE_3BYTE_BGR, 2);
+		BufferedImage target=new BufferedImage(123, 457, BufferedImage.TYPE_INT_ARGB_PRE);
+		ParallelResampler.copy(source, target);
+		for (int y=0; y<source.getHeight(); y++)
+			for (int x=0; x<source.getWidth(); x++)
+				assertEquals(source.getRGB(x, y), target.getRGB(x, y));
+	}
+
+	@Test
+	public void testSourceRegion() {
+		BufferedImage source=createRandomImage(300, 200, BufferedImage.TYPE_INT_RGB, 3);
+		Rectangle clip=new Rectangle(40, 30, 25, 20);
+		for (double scale: new double[] {.3, .75}) {
+			for (ResamplingFilter filter: ResamplingFilter.values()) {
+				BufferedImage expected=new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+				ParallelResampler.resample(source, expected, scale, 3.5, 2.25, filter, Color.WHITE, clip);
+				Rectangle region=ParallelResampler.getSourceRegion(300, 200, scale, 3.5, 2.25, filter, clip);
+				assertTrue(region.width<300 && region.height<200);
+				BufferedImage actual=new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+				ParallelResampler.resample(source.getSubimage(region.x, region.y, region.width, region.height), region.x, region.y, 300, 200,
+						actual, scale, 3.5, 2.25, filter, Color.WHITE, clip);
+				for (int y=0; y<150; y++)
+					for (int x=0; x<200; x++)
+						assertEquals(filter+" "+scale+" at "+x+","+y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+}
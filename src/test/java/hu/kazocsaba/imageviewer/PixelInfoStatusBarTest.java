@@ -0,0 +1,115 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BufferedImage;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class PixelInfoStatusBarTest {
+
+	private static BufferedImage createImage(int type, int rgb) {
+		BufferedImage image=new BufferedImage(8, 6, type);
+		image.setRGB(3, 4, rgb);
+		return image;
+	}
+
+	private static BufferedImage createGrayImage(int intensity) {
+		BufferedImage image=new BufferedImage(8, 6, BufferedImage.TYPE_BYTE_GRAY);
+		// setRGB would convert the color to the linear gray color space
+		image.getRaster().setSample(3, 4, 0, intensity);
+		return image;
+	}
+
+	/**
+	 * Shows pixel (3, 4) of each image in a status bar of the specified width, and checks the label.
+	 */
+	private static void checkLabels(final int width, final BufferedImage[] images, final String[] expected) throws Throwable {
+		final Throwable[] failure=new Throwable[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					ImageViewer viewer=new ImageViewer();
+					PixelInfoStatusBar statusBar=new PixelInfoStatusBar();
+					statusBar.getComponent().setSize(width, 30);
+					viewer.setStatusBar(statusBar);
+					statusBar.setPixel(3, 4);
+					assertEquals("n/a", statusBar.label.getText());
+					for (int i=0; i<images.length; i++) {
+						viewer.setImage(images[i]);
+						assertEquals(expected[i], statusBar.label.getText());
+					}
+					statusBar.setPixel(8, 4);
+					assertEquals("n/a", statusBar.label.getText());
+				} catch (Throwable t) {
+					failure[0]=t;
+				}
+			}
+		});
+		if (failure[0]!=null) throw failure[0];
+	}
+
+	/* Images of different types one after the other, so that the reused pixel buffer has to be replaced. */
+	private static BufferedImage[] createImages() {
+		return new BufferedImage[] {
+			createGrayImage(77),
+			createImage(BufferedImage.TYPE_INT_RGB, 0x102030),
+			createImage(BufferedImage.TYPE_3BYTE_BGR, 0x405060),
+			createImage(BufferedImage.TYPE_INT_ARGB, 0x80102030),
+			createImage(BufferedImage.TYPE_4BYTE_ABGR, 0xff0a0b0c),
+		};
+	}
+
+	@Test
+	public void longFormat() throws Throwable {
+		checkLabels(1000, createImages(), new String[] {
+			"3, 4; intensity 77",
+			"3, 4; color 16,32,48",
+			"3, 4; color 64,80,96",
+			"3, 4; color 16,32,48, alpha 128",
+			"3, 4; color 10,11,12, alpha 255",
+		});
+	}
+
+	@Test
+	public void shortFormatWhenNarrow() throws Throwable {
+		checkLabels(40, createImages(), new String[] {
+			"3, 4; 77",
+			"3, 4; (16,32,48)",
+			"3, 4; (64,80,96)",
+			"3, 4; (16,32,48,128)",
+			"3, 4; (10,11,12,255)",
+		});
+	}
+
+	@Test
+	public void followsImageContents() throws Throwable {
+		final Throwable[] failure=new Throwable[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					BufferedImage image=createImage(BufferedImage.TYPE_INT_RGB, 0x102030);
+					ImageViewer viewer=new ImageViewer(image);
+					PixelInfoStatusBar statusBar=new PixelInfoStatusBar();
+					statusBar.getComponent().setSize(1000, 30);
+					viewer.setStatusBar(statusBar);
+					statusBar.setPixel(3, 4);
+					assertEquals("3, 4; color 16,32,48", statusBar.label.getText());
+					image.setRGB(3, 4, 0x708090);
+					viewer.setImage(image);
+					assertEquals("3, 4; color 112,128,144", statusBar.label.getText());
+				} catch (Throwable t) {
+					failure[0]=t;
+				}
+			}
+		});
+		if (failure[0]!=null) throw failure[0];
+	}
+}
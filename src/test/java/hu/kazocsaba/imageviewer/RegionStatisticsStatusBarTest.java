@@ -0,0 +1,92 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class RegionStatisticsStatusBarTest {
+	private static void fill(BufferedImage image, int value) {
+		WritableRaster raster=image.getRaster();
+		int[] samples=new int[raster.getWidth()*raster.getHeight()];
+		Arrays.fill(samples, value);
+		raster.setSamples(0, 0, raster.getWidth(), raster.getHeight(), 0, samples);
+	}
+
+	/**
+	 * Waits until the label shows the specified mean, and fails if it doesn't within a few seconds.
+	 */
+	private static void waitForMean(final RegionStatisticsStatusBar statusBar, double mean) throws Exception {
+		// the status bar has no width, so it uses the short format
+		String expected=String.format("; %.1f±", mean);
+		final String[] text=new String[1];
+		long deadline=System.currentTimeMillis()+5000;
+		do {
+			SwingUtilities.invokeAndWait(new Runnable() {
+
+				@Override
+				public void run() {
+					text[0]=statusBar.label.getText();
+				}
+			});
+			if (text[0].contains(expected)) return;
+			Thread.sleep(10);
+		} while (System.currentTimeMillis()<deadline);
+		fail("Expected "+expected+" but the status bar shows "+text[0]);
+	}
+
+	@Test
+	public void statisticsFollowImageContents() throws Exception {
+		final BufferedImage image=new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+		fill(image, 10);
+		final ImageViewer viewer=new ImageViewer(image);
+		final RegionStatisticsStatusBar statusBar=new RegionStatisticsStatusBar(3);
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				viewer.setStatusBar(statusBar);
+				statusBar.setPixel(5, 5);
+			}
+		});
+		waitForMean(statusBar, 10);
+
+		fill(image, 200);
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				viewer.imageUpdated(new Rectangle(0, 0, 10, 10));
+			}
+		});
+		waitForMean(statusBar, 200);
+
+		fill(image, 50);
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				viewer.setImage(image);
+			}
+		});
+		waitForMean(statusBar, 50);
+
+		final BufferedImage other=new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+		fill(other, 7);
+		SwingUtilities.invokeAndWait(new Runnable() {
+
+			@Override
+			public void run() {
+				viewer.setImage(other);
+			}
+		});
+		waitForMean(statusBar, 7);
+	}
+}
@@ -0,0 +1,71 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class SummedAreaTableTest {
+	private static void check(Raster raster, SummedAreaTable table, Random random) {
+		for (int i=0; i<200; i++) {
+			int x0=random.nextInt(raster.getWidth()), x1=x0+1+random.nextInt(raster.getWidth()-x0);
+			int y0=random.nextInt(raster.getHeight()), y1=y0+1+random.nextInt(raster.getHeight()-y0);
+			for (int b=0; b<raster.getNumBands(); b++) {
+				double sum=0, squareSum=0;
+				for (int y=y0; y<y1; y++)
+					for (int x=x0; x<x1; x++) {
+						double v=raster.getSampleDouble(x, y, b);
+						sum+=v;
+						squareSum+=v*v;
+					}
+				int count=(x1-x0)*(y1-y0);
+				double mean=sum/count;
+				assertEquals(sum, table.sum(x0, y0, x1, y1, b), 1e-6*Math.abs(sum)+1e-9);
+				assertEquals(squareSum, table.squareSum(x0, y0, x1, y1, b), 1e-6*squareSum+1e-9);
+				assertEquals(squareSum/count-mean*mean, table.variance(x0, y0, x1, y1, b), 1e-6*(squareSum/count)+1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testIntegerImage() {
+		Random random=new Random(1);
+		BufferedImage image=new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		SummedAreaTable table=new SummedAreaTable(image.getRaster());
+		assertEquals(3, table.getNumBands());
+		check(image.getRaster(), table, random);
+	}
+
+	@Test
+	public void testFloatRaster() {
+		Random random=new Random(2);
+		WritableRaster raster=Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_FLOAT, 19, 31, 1), null);
+		for (int y=0; y<raster.getHeight(); y++)
+			for (int x=0; x<raster.getWidth(); x++)
+				raster.setSample(x, y, 0, random.nextGaussian()*100);
+		check(raster, new SummedAreaTable(raster), random);
+	}
+
+	@Test
+	public void testConstantRegionHasZeroVariance() {
+		BufferedImage image=new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster raster=image.getRaster();
+		for (int y=0; y<10; y++)
+			for (int x=0; x<10; x++)
+				raster.setSample(x, y, 0, 200);
+		SummedAreaTable table=new SummedAreaTable(raster);
+		assertEquals(200*16, table.sum(2, 3, 6, 7, 0), 0);
+		assertEquals(0, table.variance(0, 0, 10, 10, 0), 0);
+	}
+}
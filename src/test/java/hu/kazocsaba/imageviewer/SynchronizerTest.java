@@ -0,0 +1,95 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Container;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class SynchronizerTest {
+
+	/** A validate root that counts how many times it was validated. */
+	private static class CountingRoot extends Container {
+		int validations=0;
+
+		@Override
+		public void validate() {
+			validations++;
+		}
+	}
+
+	/**
+	 * Registers the root for deferred validation whenever the viewer follows a change, the way the image component
+	 * does when it is showing. Without a screen the components have no validate roots of their own.
+	 */
+	private static void deferOnChange(final ImageViewer viewer, final CountingRoot root, final String property) {
+		viewer.addPropertyChangeListener(property, new PropertyChangeListener() {
+
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				assertTrue("validation should be deferred while following", viewer.getSynchronizer().deferValidation(viewer, root));
+				assertEquals("the root should not be validated before the leader finishes", 0, root.validations);
+			}
+		});
+	}
+
+	private static ImageViewer[] createViewers(int count) {
+		ImageViewer[] viewers=new ImageViewer[count];
+		for (int i=0; i<count; i++)
+			viewers[i]=new ImageViewer(new BufferedImage(40+10*i, 30, BufferedImage.TYPE_INT_RGB));
+		ImageViewerUtil.synchronizeViewers(Arrays.asList(viewers));
+		return viewers;
+	}
+
+	@Test
+	public void zoomChangeValidatesEachRootOnce() {
+		ImageViewer[] viewers=createViewers(4);
+		viewers[0].setResizeStrategy(ResizeStrategy.CUSTOM_ZOOM);
+		// two of the followers share their root, like viewers placed in the same window
+		CountingRoot sharedRoot=new CountingRoot(), ownRoot=new CountingRoot();
+		deferOnChange(viewers[1], sharedRoot, "zoomFactor");
+		deferOnChange(viewers[2], sharedRoot, "zoomFactor");
+		deferOnChange(viewers[3], ownRoot, "zoomFactor");
+
+		viewers[0].setZoomFactor(2);
+		for (ImageViewer viewer: viewers)
+			assertEquals(2, viewer.getZoomFactor(), 0);
+		assertEquals(1, sharedRoot.validations);
+		assertEquals(1, ownRoot.validations);
+
+		// the roots are forgotten after the change, and validated again by the next one
+		sharedRoot.validations=ownRoot.validations=0;
+		viewers[0].setZoomFactor(3);
+		assertEquals(1, sharedRoot.validations);
+		assertEquals(1, ownRoot.validations);
+	}
+
+	@Test
+	public void strategyChangeValidatesEachRootOnce() {
+		ImageViewer[] viewers=createViewers(4);
+		CountingRoot sharedRoot=new CountingRoot(), ownRoot=new CountingRoot();
+		deferOnChange(viewers[1], sharedRoot, "resizeStrategy");
+		deferOnChange(viewers[2], sharedRoot, "resizeStrategy");
+		deferOnChange(viewers[3], ownRoot, "resizeStrategy");
+
+		viewers[0].setResizeStrategy(ResizeStrategy.NO_RESIZE);
+		for (ImageViewer viewer: viewers)
+			assertSame(ResizeStrategy.NO_RESIZE, viewer.getResizeStrategy());
+		assertEquals(1, sharedRoot.validations);
+		assertEquals(1, ownRoot.validations);
+	}
+
+	@Test
+	public void validationIsNotDeferredWithoutLeader() {
+		ImageViewer[] viewers=createViewers(4);
+		CountingRoot root=new CountingRoot();
+		assertFalse(viewers[1].getSynchronizer().deferValidation(viewers[1], root));
+		assertEquals(0, root.validations);
+	}
+}
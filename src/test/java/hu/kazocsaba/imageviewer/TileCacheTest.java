@@ -0,0 +1,59 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Kazó Csaba
+ */
+public class TileCacheTest {
+	private static TileCache.Key key(int column, int row) {
+		return new TileCache.Key(column, row, 2, 0, 0, null);
+	}
+
+	private static BufferedImage tile() {
+		return new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+	}
+
+	@Test
+	public void staysBounded() {
+		TileCache cache=new TileCache();
+		cache.setVisibleTileCount(50);
+		assertEquals(100, cache.getCapacity());
+		for (int i=0; i<1000; i++) {
+			cache.put(key(i, 0), tile());
+			assertTrue(cache.getTileCount()<=cache.getCapacity());
+		}
+		assertEquals(100, cache.getTileCount());
+		assertEquals(100*FrameCache.sizeOf(tile()), cache.getCachedBytes());
+		// the most recently added tiles are kept
+		assertNotNull(cache.get(key(999, 0)));
+		assertNull(cache.get(key(899, 0)));
+
+		// a smaller viewer needs fewer tiles, and the least recently used ones are dropped
+		cache.get(key(900, 0));
+		cache.setVisibleTileCount(10);
+		assertEquals(64, cache.getCapacity());
+		assertEquals(64, cache.getTileCount());
+		assertEquals(64*FrameCache.sizeOf(tile()), cache.getCachedBytes());
+		assertNotNull(cache.get(key(900, 0)));
+		assertNull(cache.get(key(901, 0)));
+	}
+
+	@Test
+	public void invalidateRemovesAffectedTiles() {
+		TileCache cache=new TileCache();
+		for (int column=0; column<4; column++)
+			cache.put(key(column, 0), tile());
+		// at scale 2, image pixels 200-300 are in component pixels 400-600, in the tiles of columns 1 and 2
+		cache.invalidate(new Rectangle(200, 10, 100, 10), 0);
+		assertNotNull(cache.get(key(0, 0)));
+		assertNull(cache.get(key(1, 0)));
+		assertNull(cache.get(key(2, 0)));
+		assertNotNull(cache.get(key(3, 0)));
+		assertEquals(2*FrameCache.sizeOf(tile()), cache.getCachedBytes());
+	}
+}
@@ -0,0 +1,113 @@
+package hu.kazocsaba.imageviewer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeSupport;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import javax.swing.SwingUtilities;
+import static org.junit.Assert.*;
+
+/**
+ * Helper methods shared by the tests that create and paint image components.
+ *
+ * @author Kazó Csaba
+ */
+final class ViewerTestUtil {
+	static final Runnable NOTHING=new Runnable() {
+
+		@Override
+		public void run() {}
+	};
+
+	private ViewerTestUtil() {}
+
+	/**
+	 * Runs the task on the event dispatch thread and returns its result. The jobs of the shared rescaling executor
+	 * access the components from the event dispatch thread, so the tests using them do the same.
+	 */
+	static <T> T onEventThread(Callable<T> task) throws Exception {
+		FutureTask<T> future=new FutureTask<T>(task);
+		SwingUtilities.invokeAndWait(future);
+		return future.get();
+	}
+
+	/**
+	 * Waits until the jobs submitted to the rescaling executor finish, and their results are delivered on the event
+	 * dispatch thread. Must not be called on the event dispatch thread.
+	 */
+	static void waitForRescaleExecutor() throws Exception {
+		ImageComponent.getRescaleExecutor().submit(NOTHING).get();
+		SwingUtilities.invokeAndWait(NOTHING);
+	}
+
+	/**
+	 * Occupies the rescaling thread until the returned latch is released, so that the jobs submitted in the meantime
+	 * are still pending.
+	 */
+	static CountDownLatch blockRescaling() {
+		final CountDownLatch latch=new CountDownLatch(1);
+		ImageComponent.getRescaleExecutor().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		return latch;
+	}
+
+	/** Creates an image of the specified type filled with random colors. */
+	static BufferedImage createRandomImage(int width, int height, int type, long seed) {
+		Random random=new Random(seed);
+		BufferedImage image=new BufferedImage(width, height, type);
+		for (int y=0; y<image.getHeight(); y++)
+			for (int x=0; x<image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		return image;
+	}
+
+	/** Creates an image component outside of a viewer hierarchy, with no image. */
+	static ImageComponent createComponent() {
+		ImageViewer viewer=new ImageViewer();
+		return new ImageComponent(viewer, new PropertyChangeSupport(viewer));
+	}
+
+	/** Paints the part of the component within the clip rectangle into an image of the size of the component. */
+	static BufferedImage paint(ImageComponent component, Rectangle clip) {
+		BufferedImage result=new BufferedImage(component.getWidth(), component.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g=result.createGraphics();
+		g.clip(clip);
+		component.paintComponent(g);
+		g.dispose();
+		return result;
+	}
+
+	static BufferedImage paint(ImageComponent component) {
+		return paint(component, new Rectangle(0, 0, component.getWidth(), component.getHeight()));
+	}
+
+	/** Paints the overlay component into a transparent image, so that the pixels it leaves untouched remain zero. */
+	static BufferedImage paint(OverlayComponent component) {
+		BufferedImage result=new BufferedImage(component.getWidth(), component.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g=result.createGraphics();
+		component.paintComponent(g);
+		g.dispose();
+		return result;
+	}
+
+	static void assertImageEquals(String message, BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y=0; y<expected.getHeight(); y++)
+			for (int x=0; x<expected.getWidth(); x++)
+				assertEquals(message+" at "+x+","+y, expected.getRGB(x, y), actual.getRGB(x, y));
+	}
+}